@@ -0,0 +1,66 @@
+package org.di4j.di4j.benchmarks;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.registry.ServiceGraphSnapshot;
+import org.di4j.di4j.registry.ServiceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ServiceCollectionBuilder#build()} and {@link ServiceRegistry#getLoadOrder()} for a random graph of singletons.<br>
+ * With {@code snapshot} enabled the builds use a {@link ServiceGraphSnapshot} written during the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int registrations;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private ServiceCollectionBuilder builder;
+    private ServiceRegistry registry;
+
+    @Setup
+    public void setup() throws IOException {
+        builder = GeneratedGraph.generate(GeneratedGraph.Shape.RANDOM, registrations).addSingleton(new ServiceCollectionBuilder());
+        if(snapshot) {
+            var file = Files.createTempDirectory("di4j-snapshot").resolve("graph.bin");
+            file.toFile().deleteOnExit();
+            builder.useGraphSnapshot(file);
+        }
+        registry = builder.build().getRegistry();
+    }
+
+    @Benchmark
+    public RootServiceProvider build() {
+        return builder.build();
+    }
+
+    @Benchmark
+    public List<Service<?>> loadOrder() {
+        return registry.getLoadOrder();
+    }
+}
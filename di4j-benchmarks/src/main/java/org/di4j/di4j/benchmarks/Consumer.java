@@ -0,0 +1,18 @@
+package org.di4j.di4j.benchmarks;
+
+/**
+ * A service with a single dependency on {@link Leaf}.
+ */
+public class Consumer {
+
+    private final Leaf leaf;
+
+    public Consumer(Leaf leaf) {
+        this.leaf = leaf;
+    }
+
+    public Leaf getLeaf() {
+        return leaf;
+    }
+
+}
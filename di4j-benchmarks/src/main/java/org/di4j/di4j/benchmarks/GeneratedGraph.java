@@ -0,0 +1,147 @@
+package org.di4j.di4j.benchmarks;
+
+import org.di4j.di4j.ServiceCollectionBuilder;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The `GeneratedGraph` class generates and compiles service classes, so the benchmarks can register graphs of any size.<br>
+ * Every class has a single public constructor that takes the classes it depends on, the last class is the root of the graph.<br>
+ */
+public final class GeneratedGraph {
+
+    /**
+     * The shape of a generated graph.
+     */
+    public enum Shape {
+        /**
+         * A chain where every class depends on the class before it.
+         */
+        DEEP,
+        /**
+         * A root class that depends on every other class, the other classes have no dependencies.
+         */
+        WIDE,
+        /**
+         * Every class depends on up to three random classes before it.
+         */
+        RANDOM
+    }
+
+    // Constructors can have at most 255 parameters
+    private static final int MAX_WIDTH = 200;
+
+    private final List<Class<?>> classes;
+
+    private GeneratedGraph(List<Class<?>> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Generates and compiles a graph of the given shape and size.
+     *
+     * @param shape the shape of the graph
+     * @param size the number of classes in the graph
+     * @return the generated graph
+     */
+    static GeneratedGraph generate(Shape shape, int size) {
+        if(shape == Shape.WIDE && size > MAX_WIDTH) throw new IllegalArgumentException("A wide graph can have at most " + MAX_WIDTH + " classes");
+
+        var random = new Random(size);
+        var sources = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            var dependencies = new ArrayList<Integer>();
+            switch (shape) {
+                case DEEP -> {
+                    if(i > 0) dependencies.add(i - 1);
+                }
+                case WIDE -> {
+                    if(i == size - 1) for (int j = 0; j < i; j++) dependencies.add(j);
+                }
+                case RANDOM -> {
+                    for (int j = 0; j < Math.min(i, 3); j++) {
+                        var dependency = random.nextInt(i);
+                        if(!dependencies.contains(dependency)) dependencies.add(dependency);
+                    }
+                }
+            }
+            sources.add(source(i, dependencies));
+        }
+
+        try {
+            var directory = Files.createTempDirectory("di4j-benchmarks");
+            var arguments = new ArrayList<String>();
+            arguments.add("-d");
+            arguments.add(directory.toString());
+            for (int i = 0; i < size; i++) {
+                var file = directory.resolve("G" + i + ".java");
+                Files.writeString(file, sources.get(i));
+                arguments.add(file.toString());
+            }
+            var result = ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(String[]::new));
+            if(result != 0) throw new IllegalStateException("Could not compile the generated graph");
+
+            var loader = new URLClassLoader(new java.net.URL[] { directory.toUri().toURL() }, GeneratedGraph.class.getClassLoader());
+            var classes = new ArrayList<Class<?>>();
+            for (int i = 0; i < size; i++) {
+                classes.add(loader.loadClass("generated.G" + i));
+            }
+            return new GeneratedGraph(List.copyOf(classes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String source(int index, List<Integer> dependencies) {
+        var parameters = new StringBuilder();
+        for (int i = 0; i < dependencies.size(); i++) {
+            if(i > 0) parameters.append(", ");
+            parameters.append("G").append(dependencies.get(i)).append(" d").append(i);
+        }
+        return "package generated; public class G" + index + " { public G" + index + "(" + parameters + ") {} }";
+    }
+
+    /**
+     * Registers every class of the graph as a transient service.
+     *
+     * @param builder the builder to register the classes with
+     * @return the builder
+     */
+    ServiceCollectionBuilder addTransient(ServiceCollectionBuilder builder) {
+        for (Class<?> clazz : classes) {
+            builder.addTransient(clazz);
+        }
+        return builder;
+    }
+
+    /**
+     * Registers every class of the graph as a singleton service.
+     *
+     * @param builder the builder to register the classes with
+     * @return the builder
+     */
+    ServiceCollectionBuilder addSingleton(ServiceCollectionBuilder builder) {
+        for (Class<?> clazz : classes) {
+            builder.addSingleton(clazz);
+        }
+        return builder;
+    }
+
+    /**
+     * Returns the root of the graph, the class that (transitively) depends on the most other classes.
+     *
+     * @return the root of the graph
+     */
+    Class<?> root() {
+        return classes.get(classes.size() - 1);
+    }
+}
@@ -0,0 +1,50 @@
+package org.di4j.di4j.benchmarks;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures constructing deep and wide graphs of transient services.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphBenchmark {
+
+    @Param({"DEEP", "WIDE"})
+    public GeneratedGraph.Shape shape;
+
+    @Param({"10", "100"})
+    public int size;
+
+    private RootServiceProvider provider;
+    private Class<?> root;
+
+    @Setup
+    public void setup() {
+        var graph = GeneratedGraph.generate(shape, size);
+        provider = graph.addTransient(new ServiceCollectionBuilder()).build();
+        root = graph.root();
+    }
+
+    @Benchmark
+    public Object constructGraph() {
+        return provider.getService(root);
+    }
+}
@@ -0,0 +1,12 @@
+package org.di4j.di4j.benchmarks;
+
+/**
+ * A service without dependencies.
+ */
+public class Leaf {
+
+    public Leaf() {
+
+    }
+
+}
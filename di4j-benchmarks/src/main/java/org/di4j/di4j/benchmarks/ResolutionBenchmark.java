@@ -0,0 +1,79 @@
+package org.di4j.di4j.benchmarks;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.scope.ServiceScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures resolving a {@link Consumer} whose {@link Leaf} dependency is registered with each lifetime,
+ * through the {@link RootServiceProvider} and through a {@link ServiceScope}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolutionBenchmark {
+
+    private static RootServiceProvider build(String lifetime) {
+        var builder = new ServiceCollectionBuilder();
+        switch (lifetime) {
+            case "SINGLETON" -> builder.addSingleton(Leaf.class);
+            case "TRANSIENT" -> builder.addTransient(Leaf.class);
+            case "SCOPED" -> builder.addScoped(Leaf.class);
+            case "INJECTION_ONLY" -> builder.addInjectionOnly(Leaf.class, (provider, context) -> new Leaf());
+            default -> throw new IllegalArgumentException(lifetime);
+        }
+        return builder.addTransient(Consumer.class).build();
+    }
+
+    @State(Scope.Benchmark)
+    public static class RootState {
+        // Scoped services cannot be resolved from the root provider
+        @Param({"SINGLETON", "TRANSIENT", "INJECTION_ONLY"})
+        public String lifetime;
+
+        RootServiceProvider provider;
+
+        @Setup
+        public void setup() {
+            provider = build(lifetime);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ScopeState {
+        @Param({"SINGLETON", "TRANSIENT", "SCOPED", "INJECTION_ONLY"})
+        public String lifetime;
+
+        ServiceScope scope;
+
+        @Setup
+        public void setup() {
+            scope = build(lifetime).getScope();
+        }
+    }
+
+    @Benchmark
+    public Consumer resolveFromRoot(RootState state) {
+        return state.provider.getService(Consumer.class);
+    }
+
+    @Benchmark
+    public Consumer resolveFromScope(ScopeState state) {
+        return state.scope.getService(Consumer.class);
+    }
+}
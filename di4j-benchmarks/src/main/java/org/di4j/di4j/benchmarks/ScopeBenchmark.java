@@ -0,0 +1,58 @@
+package org.di4j.di4j.benchmarks;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.scope.ServiceScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating a scope per request, with and without resolving a scoped service in it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScopeBenchmark {
+
+    // The number of other registrations, scopes size their storage by the registry
+    @Param({"10", "1000"})
+    public int registrations;
+
+    private RootServiceProvider provider;
+
+    @Setup
+    public void setup() {
+        var builder = new ServiceCollectionBuilder();
+        GeneratedGraph.generate(GeneratedGraph.Shape.RANDOM, registrations).addTransient(builder);
+        provider = builder.addScoped(Leaf.class).addTransient(Consumer.class).build();
+    }
+
+    @Benchmark
+    public ServiceScope createScope() {
+        return provider.getScope();
+    }
+
+    @Benchmark
+    public Leaf createScopeAndResolveScoped() {
+        return provider.getScope().getService(Leaf.class);
+    }
+
+    @Benchmark
+    public Consumer createScopeAndResolveTransient() {
+        return provider.getScope().getService(Consumer.class);
+    }
+}
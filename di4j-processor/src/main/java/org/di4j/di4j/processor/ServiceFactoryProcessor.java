@@ -0,0 +1,313 @@
+package org.di4j.di4j.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The `ServiceFactoryProcessor` generates a {@code ServiceFactory} for every class annotated with {@code @Injectable}<br>
+ * or with a constructor annotated with {@code @ServiceProviderConstructor}.<br>
+ * The generated factory calls the constructor directly, so the service can be created without reflection.<br>
+ * The constructor is chosen with the same rules DI4J uses at runtime: the public constructor annotated with<br>
+ * {@code @ServiceProviderConstructor}, or the only public constructor of the class.<br>
+ * Every class annotated with {@code @Injectable} is also written to the service index {@value #SERVICE_INDEX} together with<br>
+ * its lifetime and the type it is registered as, which {@code ServiceCollectionBuilder.addIndexed()} reads at startup.
+ */
+@SupportedAnnotationTypes({ServiceFactoryProcessor.INJECTABLE, ServiceFactoryProcessor.SERVICE_PROVIDER_CONSTRUCTOR})
+public class ServiceFactoryProcessor extends AbstractProcessor {
+
+    static final String INJECTABLE = "org.di4j.di4j.annotations.Injectable";
+    static final String SERVICE_PROVIDER_CONSTRUCTOR = "org.di4j.di4j.annotations.ServiceProviderConstructor";
+    static final String SERVICE_FACTORY = "org.di4j.di4j.registry.ServiceFactory";
+    static final String SERVICE_KEY = "org.di4j.di4j.annotations.ServiceKey";
+    static final String CLASS_NAME_SUFFIX = "_DI4JFactory";
+    static final String SERVICE_INDEX = "META-INF/di4j/services";
+
+    private final Set<String> generated = new HashSet<>();
+    private final Map<String, String> index = new TreeMap<>();
+    private final List<Element> indexedElements = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        var types = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if(element.getKind() == ElementKind.CLASS) types.add((TypeElement) element);
+                else if(element.getKind() == ElementKind.CONSTRUCTOR) types.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+
+        for (TypeElement type : types) {
+            generateFactory(type);
+            if(getInjectable(type) != null) addToIndex(type);
+        }
+
+        if(roundEnv.processingOver() && !indexedElements.isEmpty()) writeIndex();
+        return false;
+    }
+
+    /**
+     * Adds the given {@code @Injectable} class to the service index, or reports an error if it cannot be registered from the index.<br>
+     * An index entry is a line of the form {@code LIFETIME implementation [type]}, using the binary names of the classes.
+     *
+     * @param type the class to add
+     */
+    private void addToIndex(TypeElement type) {
+        var elements = processingEnv.getElementUtils();
+        String lifetime = null;
+        TypeMirror as = null;
+        for (var entry : elements.getElementValuesWithDefaults(getInjectable(type)).entrySet()) {
+            var name = entry.getKey().getSimpleName().toString();
+            if(name.equals("lifetime")) lifetime = ((VariableElement) entry.getValue().getValue()).getSimpleName().toString();
+            else if(name.equals("as")) as = (TypeMirror) entry.getValue().getValue();
+        }
+
+        if(lifetime == null || lifetime.equals("INJECTION_ONLY")) {
+            error(type, "The class " + type.getQualifiedName() + " cannot be indexed with the lifetime " + lifetime + ", injection-only services need a factory");
+            return;
+        }
+        if(lifetime.equals("POOLED")) {
+            error(type, "The class " + type.getQualifiedName() + " cannot be indexed with the lifetime POOLED, pooled services need a capacity");
+            return;
+        }
+
+        var line = lifetime + " " + elements.getBinaryName(type);
+        if(as != null && as.getKind() == TypeKind.DECLARED) {
+            var typeUtils = processingEnv.getTypeUtils();
+            if(!typeUtils.isAssignable(typeUtils.erasure(type.asType()), typeUtils.erasure(as))) {
+                error(type, "The class " + type.getQualifiedName() + " is not assignable to " + as);
+                return;
+            }
+            line += " " + elements.getBinaryName((TypeElement) ((DeclaredType) as).asElement());
+        }
+        index.put(elements.getBinaryName(type).toString(), line);
+        indexedElements.add(type);
+    }
+
+    /**
+     * Writes the service index, keeping the entries of an existing index for classes that were not compiled again and
+     * are still annotated with {@code @Injectable}, so incremental compilation does not drop services.
+     */
+    private void writeIndex() {
+        var filer = processingEnv.getFiler();
+        var elements = processingEnv.getElementUtils();
+        var entries = new TreeMap<String, String>();
+        try (var reader = new BufferedReader(filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_INDEX).openReader(true))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var parts = line.trim().split("\\s+");
+                if(parts.length < 2) continue;
+                // Entries of classes that no longer exist or are no longer annotated with @Injectable are dropped
+                var type = elements.getTypeElement(parts[1].replace('$', '.'));
+                if(type != null && getInjectable(type) != null) entries.put(parts[1], line.trim());
+            }
+        } catch (IOException e) {
+            // There is no index from an earlier compilation
+        }
+        entries.putAll(index);
+
+        try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_INDEX, indexedElements.toArray(Element[]::new)).openWriter()) {
+            writer.write("# Generated by " + ServiceFactoryProcessor.class.getName() + "\n");
+            for (String line : entries.values()) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write the service index " + SERVICE_INDEX + ": " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror getInjectable(TypeElement type) {
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if(((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(INJECTABLE)) return annotation;
+        }
+        return null;
+    }
+
+    /**
+     * Generates the factory for the given class, or reports an error if no factory can be generated for it.<br>
+     * Private and non-static nested classes only get a warning, because DI4J can still create them with reflection.
+     *
+     * @param type the class to generate the factory for
+     */
+    private void generateFactory(TypeElement type) {
+        if(type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, "The class " + type.getQualifiedName() + " is abstract and cannot be created by a service factory");
+            return;
+        }
+        if(type.getModifiers().contains(Modifier.PRIVATE) || (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC))) {
+            // The factory cannot call the constructor, the service is still created with reflection at runtime
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The class " + type.getQualifiedName()
+                    + " is private or a non-static nested class, no service factory is generated for it", type);
+            return;
+        }
+
+        var constructor = findConstructor(type);
+        if(constructor == null) return;
+
+        var packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        var factoryName = factorySimpleName(type);
+        var qualifiedFactoryName = packageName.isEmpty() ? factoryName : packageName + "." + factoryName;
+        if(!generated.add(qualifiedFactoryName)) return;
+
+        var parameterTypes = new ArrayList<String>();
+        var parameterKeys = new ArrayList<String>();
+        for (VariableElement parameter : constructor.getParameters()) {
+            parameterTypes.add(processingEnv.getTypeUtils().erasure(parameter.asType()).toString());
+            parameterKeys.add(getServiceKey(parameter));
+        }
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedFactoryName, type).openWriter()) {
+            writer.write(generateSource(packageName, factoryName, type.getQualifiedName().toString(), parameterTypes, parameterKeys));
+        } catch (IOException e) {
+            error(type, "Could not write the service factory " + qualifiedFactoryName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the constructor the service is created with, using the same rules as DI4J at runtime.
+     *
+     * @param type the class to find the constructor for
+     * @return the constructor, or null if an error was reported
+     */
+    private ExecutableElement findConstructor(TypeElement type) {
+        var constructors = new ArrayList<ExecutableElement>();
+        var serviceProviderConstructors = new ArrayList<ExecutableElement>();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if(!constructor.getModifiers().contains(Modifier.PUBLIC)) continue;
+            constructors.add(constructor);
+            if(isServiceProviderConstructor(constructor)) serviceProviderConstructors.add(constructor);
+        }
+
+        if(constructors.size() != 1 && serviceProviderConstructors.isEmpty()) {
+            error(type, "The class " + type.getQualifiedName() + " does not have exactly one constructor");
+            return null;
+        }
+        if(serviceProviderConstructors.size() > 1) {
+            error(type, "The class " + type.getQualifiedName() + " has more than one service provider constructor");
+            return null;
+        }
+        return serviceProviderConstructors.isEmpty() ? constructors.get(0) : serviceProviderConstructors.get(0);
+    }
+
+    /**
+     * Returns the key of the {@code @ServiceKey} annotation of the parameter, or null if the parameter has no key.
+     */
+    private static String getServiceKey(VariableElement parameter) {
+        for (AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+            if(!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(SERVICE_KEY)) continue;
+            for (var value : annotation.getElementValues().entrySet()) {
+                if(value.getKey().getSimpleName().contentEquals("value")) return (String) value.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private boolean isServiceProviderConstructor(ExecutableElement constructor) {
+        return constructor.getAnnotationMirrors().stream()
+                .anyMatch(x -> ((TypeElement) x.getAnnotationType().asElement()).getQualifiedName().contentEquals(SERVICE_PROVIDER_CONSTRUCTOR));
+    }
+
+    /**
+     * Returns the simple name of the factory, which is the binary name of the class without its package, so that
+     * {@code Outer.Inner} gets the factory {@code Outer$Inner_DI4JFactory} and cannot collide with the factory of a class {@code Outer_Inner}.
+     */
+    private String factorySimpleName(TypeElement type) {
+        var name = processingEnv.getElementUtils().getBinaryName(type).toString();
+        return name.substring(name.lastIndexOf('.') + 1) + CLASS_NAME_SUFFIX;
+    }
+
+    static String generateSource(String packageName, String factoryName, String typeName, List<String> parameterTypes, List<String> parameterKeys) {
+        var source = new StringBuilder();
+        if(!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+
+        source.append("@javax.annotation.processing.Generated(\"").append(ServiceFactoryProcessor.class.getName()).append("\")\n");
+        source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        source.append("public final class ").append(factoryName).append(" implements ").append(SERVICE_FACTORY).append("<").append(typeName).append("> {\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public Class<?>[] getParameterTypes() {\n");
+        source.append("        return new Class<?>[] {");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            source.append(i == 0 ? " " : ", ").append(parameterTypes.get(i)).append(".class");
+        }
+        source.append(parameterTypes.isEmpty() ? "};\n" : " };\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public ").append(typeName).append(" create(Object[] parameters) throws Exception {\n");
+        source.append("        return new ").append(typeName).append("(");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if(i > 0) source.append(", ");
+            source.append("(").append(parameterTypes.get(i)).append(") parameters[").append(i).append("]");
+        }
+        source.append(");\n");
+        source.append("    }\n");
+
+        if(parameterKeys.stream().anyMatch(x -> x != null)) {
+            source.append("\n    @Override\n");
+            source.append("    public String[] getParameterKeys() {\n");
+            source.append("        return new String[] {");
+            for (int i = 0; i < parameterKeys.size(); i++) {
+                source.append(i == 0 ? " " : ", ").append(parameterKeys.get(i) != null ? quote(parameterKeys.get(i)) : "null");
+            }
+            source.append(" };\n");
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Quotes the value as a Java string literal.
+     */
+    private static String quote(String value) {
+        var literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                default -> {
+                    if(c < 0x20) literal.append(String.format("\\u%04x", (int) c));
+                    else literal.append(c);
+                }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
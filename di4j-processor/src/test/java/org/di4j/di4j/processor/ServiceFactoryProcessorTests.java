@@ -0,0 +1,173 @@
+package org.di4j.di4j.processor;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.registry.ServiceFactory;
+import org.junit.Test;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServiceFactoryProcessorTests {
+
+    private static JavaFileObject source(String name, String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static Path compile(DiagnosticCollector<JavaFileObject> diagnostics, JavaFileObject... sources) throws Exception {
+        var output = Files.createTempDirectory("di4j-processor");
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        var options = List.of("-d", output.toString(), "-classpath", System.getProperty("java.class.path"));
+        var task = compiler.getTask(null, null, diagnostics, options, null, List.of(sources));
+        task.setProcessors(List.of(new ServiceFactoryProcessor()));
+        task.call();
+        return output;
+    }
+
+    @Test
+    public void generatesFactoryThatIsPickedUp() throws Exception {
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var output = compile(diagnostics,
+                source("sample.Greeter", "package sample; public class Greeter { public Greeter() {} }"),
+                source("sample.Consumer", """
+                        package sample;
+                        import org.di4j.di4j.annotations.Injectable;
+                        import org.di4j.di4j.annotations.ServiceProviderConstructor;
+                        @Injectable
+                        public class Consumer {
+                            public final Greeter greeter;
+                            public Consumer() { this(null); }
+                            @ServiceProviderConstructor
+                            public Consumer(Greeter greeter) { this.greeter = greeter; }
+                        }
+                        """),
+                source("sample.Holder", """
+                        package sample;
+                        public class Holder {
+                            @org.di4j.di4j.annotations.Injectable
+                            public static class Nested { public Nested(Greeter greeter) {} }
+                            @org.di4j.di4j.annotations.Injectable
+                            public class Inner { public Inner() {} }
+                        }
+                        """),
+                source("sample.Holder_Nested", """
+                        package sample;
+                        @org.di4j.di4j.annotations.Injectable
+                        public class Holder_Nested { public Holder_Nested() {} }
+                        """));
+        assertTrue(diagnostics.getDiagnostics().toString(), diagnostics.getDiagnostics().stream().noneMatch(x -> x.getKind() == javax.tools.Diagnostic.Kind.ERROR));
+        assertTrue(Files.exists(output.resolve("sample/Consumer_DI4JFactory.class")));
+        assertTrue(Files.exists(output.resolve("sample/Holder$Nested_DI4JFactory.class")));
+        assertTrue(Files.exists(output.resolve("sample/Holder_Nested_DI4JFactory.class")));
+        assertFalse(Files.exists(output.resolve("sample/Holder$Inner_DI4JFactory.class")));
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(x -> x.getKind() == javax.tools.Diagnostic.Kind.WARNING
+                && x.getMessage(null).contains("no service factory is generated")));
+
+        try (var loader = new URLClassLoader(new java.net.URL[] { output.toUri().toURL() }, getClass().getClassLoader())) {
+            Class<Object> greeter = (Class<Object>) loader.loadClass("sample.Greeter");
+            Class<Object> consumer = (Class<Object>) loader.loadClass("sample.Consumer");
+
+            RootServiceProvider rsp = new ServiceCollectionBuilder()
+                    .addSingleton(greeter)
+                    .addTransient(consumer)
+                    .build();
+            Object instance = rsp.getService(consumer);
+            assertSame(rsp.getService(greeter), consumer.getField("greeter").get(instance));
+        }
+    }
+
+    @Test
+    public void generatedFactoryMatchesTheHandWrittenFixture() throws Exception {
+        // Mirrors TestServiceGenerated and its hand-written factory in the di4j tests
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var output = compile(diagnostics,
+                source("fixture.Level1", "package fixture; public class Level1 { public Level1() {} }"),
+                source("fixture.Generated", """
+                        package fixture;
+                        @org.di4j.di4j.annotations.Injectable
+                        public class Generated {
+                            public final Level1 level1;
+                            public Generated(Level1 level1) { this.level1 = level1; }
+                        }
+                        """));
+        assertTrue(diagnostics.getDiagnostics().toString(), diagnostics.getDiagnostics().stream().noneMatch(x -> x.getKind() == javax.tools.Diagnostic.Kind.ERROR));
+
+        try (var loader = new URLClassLoader(new java.net.URL[] { output.toUri().toURL() }, getClass().getClassLoader())) {
+            Class<?> level1 = loader.loadClass("fixture.Level1");
+            var factory = (ServiceFactory<?>) loader.loadClass("fixture.Generated" + ServiceFactory.CLASS_NAME_SUFFIX).getConstructor().newInstance();
+            assertArrayEquals(new Class<?>[] { level1 }, factory.getParameterTypes());
+
+            Object parameter = level1.getConstructor().newInstance();
+            Object instance = factory.create(new Object[] { parameter });
+            assertSame(parameter, instance.getClass().getField("level1").get(instance));
+        }
+    }
+
+    @Test
+    public void indexedServicesAreRegistered() throws Exception {
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var output = compile(diagnostics,
+                source("indexed.Greeting", "package indexed; public interface Greeting { String greet(); }"),
+                source("indexed.EnglishGreeting", """
+                        package indexed;
+                        import org.di4j.di4j.annotations.Injectable;
+                        import org.di4j.di4j.registry.ServiceLifetime;
+                        @Injectable(lifetime = ServiceLifetime.SINGLETON, as = Greeting.class)
+                        public class EnglishGreeting implements Greeting {
+                            public String greet() { return "Hello"; }
+                        }
+                        """),
+                source("indexed.Greeter", """
+                        package indexed;
+                        @org.di4j.di4j.annotations.Injectable
+                        public class Greeter {
+                            public final Greeting greeting;
+                            public Greeter(Greeting greeting) { this.greeting = greeting; }
+                        }
+                        """));
+        assertTrue(diagnostics.getDiagnostics().toString(), diagnostics.getDiagnostics().stream().noneMatch(x -> x.getKind() == javax.tools.Diagnostic.Kind.ERROR));
+        assertEquals(List.of("# Generated by " + ServiceFactoryProcessor.class.getName(), "SINGLETON indexed.EnglishGreeting indexed.Greeting", "TRANSIENT indexed.Greeter"),
+                Files.readAllLines(output.resolve(ServiceFactoryProcessor.SERVICE_INDEX)));
+
+        try (var loader = new URLClassLoader(new java.net.URL[] { output.toUri().toURL() }, getClass().getClassLoader())) {
+            Class<Object> greeting = (Class<Object>) loader.loadClass("indexed.Greeting");
+            Class<Object> greeter = (Class<Object>) loader.loadClass("indexed.Greeter");
+
+            RootServiceProvider rsp = new ServiceCollectionBuilder()
+                    .addIndexed(loader)
+                    .build();
+            Object first = rsp.getService(greeter);
+            assertNotSame(first, rsp.getService(greeter));
+            assertSame(rsp.getService(greeting), greeter.getField("greeting").get(first));
+        }
+    }
+
+    @Test
+    public void reportsAmbiguousConstructors() throws Exception {
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        compile(diagnostics, source("sample.Ambiguous", """
+                package sample;
+                @org.di4j.di4j.annotations.Injectable
+                public class Ambiguous {
+                    public Ambiguous() {}
+                    public Ambiguous(String value) {}
+                }
+                """));
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(x -> x.getKind() == javax.tools.Diagnostic.Kind.ERROR
+                && x.getMessage(null).contains("does not have exactly one constructor")));
+    }
+}
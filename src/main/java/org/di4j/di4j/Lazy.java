@@ -0,0 +1,21 @@
+package org.di4j.di4j;
+
+/**
+ * The `Lazy` interface defers the creation of a dependency until it is first used.<br>
+ * A constructor parameter of type {@code Lazy<T>} is injected with a handle that resolves {@code T} on the first call to
+ * {@link #get()} and returns the same instance on every following call.<br>
+ * The instance is resolved through the service provider that created the service the handle was injected into, so a
+ * {@code Lazy} of a scoped service resolves the instance of that scope.<br>
+ *
+ * @param <T> the type of the service
+ */
+public interface Lazy<T> {
+
+    /**
+     * Returns the instance of the service, resolving it on the first call.
+     *
+     * @return the instance of the service
+     */
+    T get();
+
+}
@@ -0,0 +1,21 @@
+package org.di4j.di4j;
+
+/**
+ * The `Provider` interface resolves a dependency every time it is requested.<br>
+ * A constructor parameter of type {@code Provider<T>} is injected with a handle that resolves {@code T} on every call to
+ * {@link #get()}, following the lifetime of the service: singletons and scoped services return the same instance,
+ * transient services return a new instance on every call.<br>
+ * The instance is resolved through the service provider that created the service the handle was injected into.<br>
+ *
+ * @param <T> the type of the service
+ */
+public interface Provider<T> {
+
+    /**
+     * Resolves an instance of the service.
+     *
+     * @return the instance of the service
+     */
+    T get();
+
+}
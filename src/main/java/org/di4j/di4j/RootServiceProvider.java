@@ -1,31 +1,46 @@
 package org.di4j.di4j;
 
 import org.di4j.di4j.exceptions.CannotUseScopedServiceInRootScopeException;
+import org.di4j.di4j.exceptions.CircularDependencyException;
 import org.di4j.di4j.exceptions.ClassNotAssignableException;
 import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
 import org.di4j.di4j.exceptions.InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException;
 import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
 import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
+import org.di4j.di4j.registry.MultiBinding;
 import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.registry.ServiceLifetime;
 import org.di4j.di4j.registry.ServiceRegistry;
+import org.di4j.di4j.scope.AmbientScope;
+import org.di4j.di4j.scope.ConcurrentServiceScope;
 import org.di4j.di4j.scope.ServiceScope;
+import org.di4j.di4j.scope.ServiceScopePool;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
 
 /**
  * The `RootServiceProvider` class represents a service provider for the root scope of a service hierarchy.<br>
- * It contains a map of singleton services and provides methods to retrieve a service instance from the root scope.<br>
+ * It provides methods to retrieve a service instance from the root scope, singleton instances are kept by their registrations.<br>
+ * The registry can be replaced while the provider is running, see {@link ServiceCollectionBuilder#update(RootServiceProvider)}. Every resolution
+ * and every scope reads the registry once, so it keeps working with the registry it started with.<br>
  */
 public class RootServiceProvider extends ServiceProvider {
 
-    private Map<Class<?>, Object> singletonServices = new HashMap<>();
+    volatile ServiceRegistry registry;
 
-
-    ServiceRegistry registry;
+    private volatile CompletableFuture<Void> warmUp = CompletableFuture.completedFuture(null);
 
     /**
-     * Creates a new root service provider with the given service registry.
+     * Creates a new root service provider with the given service registry.<br>
+     * Singleton instances are kept by the registrations of the registry, so providers sharing a registry also share its singletons.
      *
      * @param registry the service registry to use for the root service provider
      */
@@ -34,7 +49,9 @@ public class RootServiceProvider extends ServiceProvider {
     }
 
     /**
-     * Retrieves a service instance of the given type from the root scope using the given context.
+     * Retrieves a service instance of the given type from the root scope using the given context.<br>
+     * If a scope of this provider is bound with {@link AmbientScope}, scoped and transient services are resolved in that scope instead,
+     * singletons are always resolved in the root scope.
      *
      * @param type the type of the service to retrieve
      * @param context the context to use to retrieve the service instance
@@ -42,38 +59,246 @@ public class RootServiceProvider extends ServiceProvider {
      * @return the service instance of the given type, or null if the service is not registered
      * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
      * @throws InvalidServiceRegistrationException if the service registration is invalid
-     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and no scope of this provider is bound
      * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
      * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
      * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
      */
     @Override
     public <T> T getService(Class<T> type, Class<?> context) {
-        // Check to see if we already have an instance for this
-        if(singletonServices.containsKey(type)) {
-            return type.cast(singletonServices.get(type));
+        Service<T> service = registry.getRegistration(type);
+        if(service == null) return null;
+        return resolveInAmbientScope(service, context);
+    }
+
+    /**
+     * Retrieves a service instance of the given type, which may be a parameterized type, from the root scope using the given context.<br>
+     * Just like {@link #getService(Class, Class)} scoped and transient services are resolved in the scope bound with {@link AmbientScope}.
+     *
+     * @param type the closed type of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @return the service instance of the given type, or null if the service is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and no scope of this provider is bound
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    @Override
+    public Object getService(Type type, Class<?> context) {
+        var service = registry.getRegistration(type);
+        if(service == null) return null;
+        return resolveInAmbientScope(service, context);
+    }
+
+    private <T> T resolveInAmbientScope(Service<T> service, Class<?> context) {
+        if(service.getLifetime() != ServiceLifetime.SINGLETON) {
+            var ambient = AmbientScope.current(this);
+            if(ambient != null) return ambient.resolve(service, context);
         }
+        return resolve(service, context);
+    }
 
-        Service<T> service = registry.getRegistration(type);
+    /**
+     * Retrieves an instance of the service of the given type that was registered with the given key.<br>
+     * Just like {@link #getService(Class, Class)} scoped and transient services are resolved in the scope bound with {@link AmbientScope}.
+     *
+     * @param type the type of the service to retrieve
+     * @param key the key the service was registered with
+     * @param <T> the type of the service to retrieve
+     * @return the service instance, or null if no service of the type is registered with the key
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and no scope of this provider is bound
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public <T> T getKeyedService(Class<T> type, Object key) {
+        Service<T> service = registry.getKeyedRegistration(type, key);
         if(service == null) return null;
+        return resolveInAmbientScope(service, null);
+    }
 
-        if(service.isScoped()) throw new CannotUseScopedServiceInRootScopeException("The service " + type.getName() + " is a scoped service and cannot be used in the root scope");
+    /**
+     * Retrieves an instance of every service registered as the given type, in registration order.<br>
+     * If a scope of this provider is bound with {@link AmbientScope} and not every registration is a singleton, the services are resolved in that scope.
+     *
+     * @param type the type of the services to retrieve
+     * @param <T> the type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if a service is a scoped service and no scope of this provider is bound
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public <T> List<T> getServices(Class<T> type) {
+        return resolveInAmbientScope(registry.getMultiBinding(type));
+    }
 
-        if(service.isTransient()) return registry.getService(type, this, context);
+    /**
+     * Retrieves an instance of every service registered as the given type, which may be a parameterized type, in registration order.<br>
+     * Just like {@link #getServices(Class)} the services are resolved in the scope bound with {@link AmbientScope} if not every registration is a singleton.
+     *
+     * @param type the closed type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if a service is a scoped service and no scope of this provider is bound
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public List<?> getServices(Type type) {
+        return resolveInAmbientScope(registry.getMultiBinding(type));
+    }
 
-        // If the service is an injection only service, create a new instance
-        if(service.isInjectionOnly()) return registry.getService(type, this, context);
+    private <T> List<T> resolveInAmbientScope(MultiBinding<T> binding) {
+        if(!binding.isShared()) {
+            var ambient = AmbientScope.current(this);
+            if(ambient != null) return binding.resolveList(ambient, null, 0);
+        }
+        return binding.resolveList(this, null, 0);
+    }
 
-        if(service.isSingleton()) {
-            Object instance = registry.getService(type, this, context);
-            if(instance == null) {
-                return null;
+    /**
+     * Retrieves a service instance for the given registration from the root scope using the given context.
+     *
+     * @param service the registration of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @param depth the number of services that are being created on the current resolution path
+     * @param <T> the type of the service to retrieve
+     * @return the service instance for the given registration
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    @Override
+    public <T> T resolve(Service<T> service, Class<?> context, int depth) {
+        var type = service.getType();
+        var lifetime = service.getLifetime();
+        if(lifetime == null) throw new InvalidServiceRegistrationException("The service " + type.getName() + " did not have a valid registration, must be either a singleton, transient, scoped or injection only service.");
+
+        switch (lifetime) {
+            case SINGLETON -> {
+                return service.getOrCreateSingleton(this, context, depth);
+            }
+            case SCOPED -> throw new CannotUseScopedServiceInRootScopeException("The service " + type.getName() + " is a scoped service and cannot be used in the root scope");
+            // Pooled instances resolved outside a scope have no owner, they are only reused once they are released
+            case POOLED -> {
+                return service.acquire(this, context, depth);
+            }
+            // Transient and injection only services create a new instance every time
+            default -> {
+                return service.create(this, context, depth);
             }
-            singletonServices.put(type, instance);
-            return type.cast(instance);
         }
+    }
+
+    /**
+     * Hands an instance of a pooled service back to its pool, see {@link ServiceProvider#releaseService(Class, Object)}.<br>
+     * If a scope of this provider is bound with {@link AmbientScope} the instance is released through that scope, since it was resolved there.
+     * Otherwise the instance has no owner, releasing it again while it is still pooled does nothing.
+     *
+     * @param type the type the service was resolved as
+     * @param instance the instance to release
+     * @param <T> the type of the service
+     */
+    @Override
+    public <T> void releaseService(Class<T> type, T instance) {
+        var ambient = AmbientScope.current(this);
+        if(ambient != null) {
+            ambient.releaseService(type, instance);
+            return;
+        }
+        Service<T> service = registry.getRegistration(type);
+        if(service != null && service.isPooled()) service.releaseUnowned(instance);
+    }
+
+    /**
+     * Creates all singleton services up front on the common {@link ForkJoinPool} and waits for them to be created.<br>
+     * See {@link #warmUpAsync(Executor)} for how the singletons are created.
+     *
+     * @throws FailedToInstantiateServiceException if a singleton could not be instantiated
+     * @throws CannotUseScopedServiceInRootScopeException if a singleton depends on a scoped service
+     * @throws MissingServiceException if a dependency of a singleton is not registered
+     * @throws CircularDependencyException if the services depend on each other in a cycle
+     */
+    public void warmUp() {
+        warmUp(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates all singleton services up front on the given executor and waits for them to be created.<br>
+     * See {@link #warmUpAsync(Executor)} for how the singletons are created.
+     *
+     * @param executor the executor to create the singletons on
+     * @throws FailedToInstantiateServiceException if a singleton could not be instantiated
+     * @throws CannotUseScopedServiceInRootScopeException if a singleton depends on a scoped service
+     * @throws MissingServiceException if a dependency of a singleton is not registered
+     * @throws CircularDependencyException if the services depend on each other in a cycle
+     */
+    public void warmUp(Executor executor) {
+        try {
+            warmUpAsync(executor).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Starts creating all singleton services on the given executor and returns immediately.<br>
+     * The singletons are grouped by their dependency level (see {@link ServiceRegistry#getLoadLevels()}), the singletons
+     * of a level are created in parallel once every singleton of the previous levels has been created. Singletons created
+     * by a factory that does not declare its dependencies are created in parallel after all other levels.<br>
+     * Services that are requested while the warm-up is running are still created only once.
+     *
+     * @param executor the executor to create the singletons on
+     * @return a future that completes when every singleton has been created, or completes exceptionally if a singleton could not be created
+     * @throws CircularDependencyException if the services depend on each other in a cycle
+     */
+    public CompletableFuture<Void> warmUpAsync(Executor executor) {
+        var registry = this.registry;
+        var levels = new ArrayList<List<Service<?>>>();
+        for (List<Service<?>> level : registry.getLoadLevels()) {
+            var singletons = level.stream().filter(Service::isSingleton).toList();
+            if(!singletons.isEmpty()) levels.add(singletons);
+        }
+        var factorySingletons = new ArrayList<Service<?>>();
+        for (int id = 0; id < registry.size(); id++) {
+            var service = registry.getRegistration(id);
+            if(service != null && service.isSingleton() && !service.hasKnownDependencies()) factorySingletons.add(service);
+        }
+        levels.add(factorySingletons);
+
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (List<Service<?>> level : levels) {
+            future = future.thenCompose(ignored -> CompletableFuture.allOf(level.stream()
+                    .map(service -> CompletableFuture.runAsync(() -> resolve(service, null), executor))
+                    .toArray(CompletableFuture[]::new)));
+        }
+        warmUp = future;
+        return future;
+    }
 
-        throw new InvalidServiceRegistrationException("The service " + type.getName() + " did not have a valid registration, must be either a singleton, transient, scoped or injection only service.");
+    /**
+     * Returns the future of the last warm-up that was started, see {@link #warmUpAsync(Executor)}.<br>
+     * If no warm-up was started, the returned future is already completed.
+     *
+     * @return the future of the last warm-up
+     */
+    public CompletableFuture<Void> getWarmUp() {
+        return warmUp;
     }
 
     /**
@@ -83,7 +308,37 @@ public class RootServiceProvider extends ServiceProvider {
      */
     @Override
     public ServiceScope getScope() {
-        return new ServiceScope(this, registry);
+        var registry = this.registry;
+        return onScopeCreated(registry, new ServiceScope(this, registry));
+    }
+
+    /**
+     * Gets a new service scope that can be shared by several threads.<br>
+     * Scoped services are created exactly once per scope even when they are resolved from several threads at the same time,
+     * see {@link ConcurrentServiceScope}. Use {@link #getScope()} for scopes that are only used by a single thread.
+     *
+     * @return A new concurrent service scope
+     */
+    public ConcurrentServiceScope getConcurrentScope() {
+        var registry = this.registry;
+        return onScopeCreated(registry, new ConcurrentServiceScope(this, registry));
+    }
+
+    private static <S extends ServiceScope> S onScopeCreated(ServiceRegistry registry, S scope) {
+        var listener = registry.getResolutionListener();
+        if(listener != null) listener.onScopeCreated(scope);
+        return scope;
+    }
+
+    /**
+     * Creates a pool of reusable child scopes of the root service provider.<br>
+     * Scopes are taken from the pool with {@link ServiceScopePool#acquire()} and handed back with {@link ServiceScope#release()}.
+     *
+     * @param capacity the maximum number of scopes kept in the pool
+     * @return a new scope pool
+     */
+    public ServiceScopePool createScopePool(int capacity) {
+        return new ServiceScopePool(this, capacity);
     }
 
     /**
@@ -95,4 +350,19 @@ public class RootServiceProvider extends ServiceProvider {
         return registry;
     }
 
+    /**
+     * Replaces the registry of this provider with the registry the given function creates from the current one.<br>
+     * Updates are applied one at a time, so no update is lost. Resolutions and scopes that already read the previous registry
+     * finish with it, new resolutions and scopes use the new registry. Once the new registry is published the singletons
+     * it replaced are closed, see {@link ServiceRegistry#closeReplacedSingletons(ServiceRegistry)}.
+     *
+     * @param update the function that creates the new registry from the current one
+     * @throws ScopeDisposalException if one or more replaced singletons could not be closed, after the new registry was published
+     */
+    synchronized void updateRegistry(UnaryOperator<ServiceRegistry> update) {
+        var previous = registry;
+        registry = update.apply(previous);
+        registry.closeReplacedSingletons(previous);
+    }
+
 }
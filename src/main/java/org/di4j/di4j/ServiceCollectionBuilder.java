@@ -1,20 +1,43 @@
 package org.di4j.di4j;
 
+import org.di4j.di4j.annotations.ServiceKey;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
+import org.di4j.di4j.metrics.ResolutionListener;
+import org.di4j.di4j.registry.OpenGenericService;
 import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.registry.ServiceGraphSnapshot;
+import org.di4j.di4j.registry.ServiceIndex;
+import org.di4j.di4j.registry.ServiceLifetime;
 import org.di4j.di4j.registry.ServiceRegistry;
 import org.di4j.di4j.scope.ServiceScope;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 /**
  * The `ServiceCollectionBuilder` class is used to build a collection of services for a service provider.<br>
  * It provides methods to add scoped, singleton, transient, and injection-only services to the collection.<br>
+ * A type can be added more than once: looking the type up returns the service added last, while {@code List<T>}, {@code Set<T>}
+ * and {@code T[]} parameters and {@link ServiceProvider#getServices(Class)} return every service added for it, in the order they were added.<br>
+ * Services can also be added as generic types with a {@link TypeReference}, or for every type argument as open generic services.<br>
  */
 public class ServiceCollectionBuilder {
 
-    private final Map<Class<?>, IService> services = new HashMap<>();
+    private final List<IService> services = new ArrayList<>();
+
+    private Executor warmUpExecutor;
+    private boolean warmUpInBackground;
+    private ResolutionListener resolutionListener;
+    private boolean disposeTransients;
+    private Path snapshotFile;
 
     //#region Scoped
 
@@ -26,7 +49,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addScoped(Class<T> serviceClass) {
-        services.put(serviceClass, new ScopedService(serviceClass, null, null));
+        services.add(new ScopedService(serviceClass, null, null, null));
         return this;
     }
 
@@ -39,7 +62,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addScoped(Class<T> serviceClass, Class<? extends T> implementationClass) {
-        services.put(serviceClass, new ScopedService(serviceClass, implementationClass, null));
+        services.add(new ScopedService(serviceClass, implementationClass, null, null));
         return this;
     }
 
@@ -52,7 +75,22 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addScoped(Class<T> serviceClass, Function<ServiceProvider, Object> factory) {
-        services.put(serviceClass, new ScopedService(serviceClass, null, factory));
+        services.add(new ScopedService(serviceClass, null, factory, null));
+        return this;
+    }
+
+    /**
+     * Adds a scoped service of the given type and factory to the collection, declaring the services the factory depends on.<br>
+     * The declared dependencies are only used to order the services, see {@link ServiceRegistry#getLoadOrder()}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param dependencies the types of the services the factory resolves
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addScoped(Class<T> serviceClass, Function<ServiceProvider, Object> factory, Class<?>... dependencies) {
+        services.add(new ScopedService(serviceClass, null, factory, dependencies));
         return this;
     }
 
@@ -68,7 +106,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addSingleton(Class<T> serviceClass) {
-        services.put(serviceClass, new SingletonService(serviceClass, null, null, null));
+        services.add(new SingletonService(serviceClass, null, null, null, null));
         return this;
     }
 
@@ -81,7 +119,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addSingleton(Class<T> serviceClass, Class<? extends T> implementationClass) {
-        services.put(serviceClass, new SingletonService(serviceClass, null, implementationClass, null));
+        services.add(new SingletonService(serviceClass, null, implementationClass, null, null));
         return this;
     }
 
@@ -94,7 +132,22 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addSingleton(Class<T> serviceClass, Function<ServiceProvider, Object> factory) {
-        services.put(serviceClass, new SingletonService(serviceClass, null, null, factory));
+        services.add(new SingletonService(serviceClass, null, null, factory, null));
+        return this;
+    }
+
+    /**
+     * Adds a singleton service of the given type and factory to the collection, declaring the services the factory depends on.<br>
+     * The declared dependencies are only used to order the services, see {@link ServiceRegistry#getLoadOrder()}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param dependencies the types of the services the factory resolves
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addSingleton(Class<T> serviceClass, Function<ServiceProvider, Object> factory, Class<?>... dependencies) {
+        services.add(new SingletonService(serviceClass, null, null, factory, dependencies));
         return this;
     }
 
@@ -107,7 +160,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addSingleton(Class<T> serviceClass, T serviceInstance) {
-        services.put(serviceClass, new SingletonService(serviceClass, serviceInstance, null, null));
+        services.add(new SingletonService(serviceClass, serviceInstance, null, null, null));
         return this;
     }
 
@@ -123,7 +176,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addTransient(Class<T> serviceClass) {
-        services.put(serviceClass, new TransientService(serviceClass, null, null));
+        services.add(new TransientService(serviceClass, null, null, null));
         return this;
     }
 
@@ -136,7 +189,7 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addTransient(Class<T> serviceClass, Class<? extends T> implementationClass) {
-        services.put(serviceClass, new TransientService(serviceClass, implementationClass, null));
+        services.add(new TransientService(serviceClass, implementationClass, null, null));
         return this;
     }
 
@@ -149,7 +202,99 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addTransient(Class<T> serviceClass, Function<ServiceProvider, Object> factory) {
-        services.put(serviceClass, new TransientService(serviceClass, null, factory));
+        services.add(new TransientService(serviceClass, null, factory, null));
+        return this;
+    }
+
+    /**
+     * Adds a transient service of the given type and factory to the collection, declaring the services the factory depends on.<br>
+     * The declared dependencies are only used to order the services, see {@link ServiceRegistry#getLoadOrder()}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param dependencies the types of the services the factory resolves
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addTransient(Class<T> serviceClass, Function<ServiceProvider, Object> factory, Class<?>... dependencies) {
+        services.add(new TransientService(serviceClass, null, factory, dependencies));
+        return this;
+    }
+
+    //#endregion
+
+    //#region Pooled
+
+    /**
+     * Adds a pooled service of the given type to the collection, see {@link ServiceLifetime#POOLED}.<br>
+     * Instances are reused instead of being created for every request: a scope hands the instances it resolved back to the pool when it
+     * is reset or closed, instances can also be released earlier with {@link ServiceProvider#releaseService(Class, Object)}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param capacity the maximum number of instances kept for reuse
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addPooled(Class<T> serviceClass, int capacity) {
+        services.add(new PooledService<>(serviceClass, null, null, capacity, null));
+        return this;
+    }
+
+    /**
+     * Adds a pooled service of the given type to the collection, resetting every instance before it goes back to the pool.
+     *
+     * @param serviceClass the type of the service to add
+     * @param capacity the maximum number of instances kept for reuse
+     * @param reset the callback that clears the state of an instance before it is reused
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addPooled(Class<T> serviceClass, int capacity, Consumer<? super T> reset) {
+        services.add(new PooledService<>(serviceClass, null, null, capacity, reset));
+        return this;
+    }
+
+    /**
+     * Adds a pooled service of the given type and implementation to the collection.
+     *
+     * @param serviceClass the type of the service to add
+     * @param implementationClass the implementation of the service to add
+     * @param capacity the maximum number of instances kept for reuse
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addPooled(Class<T> serviceClass, Class<? extends T> implementationClass, int capacity) {
+        services.add(new PooledService<>(serviceClass, implementationClass, null, capacity, null));
+        return this;
+    }
+
+    /**
+     * Adds a pooled service of the given type and implementation to the collection, resetting every instance before it goes back to the pool.
+     *
+     * @param serviceClass the type of the service to add
+     * @param implementationClass the implementation of the service to add
+     * @param capacity the maximum number of instances kept for reuse
+     * @param reset the callback that clears the state of an instance before it is reused
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addPooled(Class<T> serviceClass, Class<? extends T> implementationClass, int capacity, Consumer<? super T> reset) {
+        services.add(new PooledService<>(serviceClass, implementationClass, null, capacity, reset));
+        return this;
+    }
+
+    /**
+     * Adds a pooled service of the given type and factory to the collection, resetting every instance before it goes back to the pool.
+     *
+     * @param serviceClass the type of the service to add
+     * @param factory the factory to use to create the service instances
+     * @param capacity the maximum number of instances kept for reuse
+     * @param reset the callback that clears the state of an instance before it is reused, or null
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addPooled(Class<T> serviceClass, Function<ServiceProvider, T> factory, int capacity, Consumer<? super T> reset) {
+        services.add(new PooledService<>(serviceClass, null, factory, capacity, reset));
         return this;
     }
 
@@ -166,47 +311,563 @@ public class ServiceCollectionBuilder {
      * @return the service collection builder
      */
     public <T> ServiceCollectionBuilder addInjectionOnly(Class<T> serviceClass, BiFunction<ServiceProvider, Class<?>, T> factory) {
-        services.put(serviceClass, new InjectionOnlyService(serviceClass, factory));
+        services.add(new InjectionOnlyService(serviceClass, factory));
+        return this;
+    }
+
+    //#endregion
+
+    //#region Keyed
+
+    /**
+     * Adds a keyed scoped service of the given type to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedScoped(Class<T> serviceClass, Object key) {
+        return addKeyed(key, new ScopedService(serviceClass, null, null, null));
+    }
+
+    /**
+     * Adds a keyed scoped service of the given type and implementation to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedScoped(Class<T> serviceClass, Object key, Class<? extends T> implementationClass) {
+        return addKeyed(key, new ScopedService(serviceClass, implementationClass, null, null));
+    }
+
+    /**
+     * Adds a keyed scoped service of the given type and factory to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedScoped(Class<T> serviceClass, Object key, Function<ServiceProvider, Object> factory) {
+        return addKeyed(key, new ScopedService(serviceClass, null, factory, null));
+    }
+
+    /**
+     * Adds a keyed singleton service of the given type to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedSingleton(Class<T> serviceClass, Object key) {
+        return addKeyed(key, new SingletonService(serviceClass, null, null, null, null));
+    }
+
+    /**
+     * Adds a keyed singleton service of the given type and implementation to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedSingleton(Class<T> serviceClass, Object key, Class<? extends T> implementationClass) {
+        return addKeyed(key, new SingletonService(serviceClass, null, implementationClass, null, null));
+    }
+
+    /**
+     * Adds a keyed singleton service of the given type and factory to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedSingleton(Class<T> serviceClass, Object key, Function<ServiceProvider, Object> factory) {
+        return addKeyed(key, new SingletonService(serviceClass, null, null, factory, null));
+    }
+
+    /**
+     * Adds a keyed singleton service of the given type and instance to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param serviceInstance the instance of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedSingleton(Class<T> serviceClass, Object key, T serviceInstance) {
+        return addKeyed(key, new SingletonService(serviceClass, serviceInstance, null, null, null));
+    }
+
+    /**
+     * Adds a keyed transient service of the given type to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedTransient(Class<T> serviceClass, Object key) {
+        return addKeyed(key, new TransientService(serviceClass, null, null, null));
+    }
+
+    /**
+     * Adds a keyed transient service of the given type and implementation to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedTransient(Class<T> serviceClass, Object key, Class<? extends T> implementationClass) {
+        return addKeyed(key, new TransientService(serviceClass, implementationClass, null, null));
+    }
+
+    /**
+     * Adds a keyed transient service of the given type and factory to the collection.<br>
+     * Keyed services are only resolved with their key, see {@link ServiceProvider#getKeyedService(Class, Object)} and {@link ServiceKey}.
+     *
+     * @param serviceClass the type of the service to add
+     * @param key the key of the service, services of the same type with the same key replace each other
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addKeyedTransient(Class<T> serviceClass, Object key, Function<ServiceProvider, Object> factory) {
+        return addKeyed(key, new TransientService(serviceClass, null, factory, null));
+    }
+
+    private ServiceCollectionBuilder addKeyed(Object key, IService service) {
+        if(key == null) throw new IllegalArgumentException("The key of a keyed service must not be null");
+        services.add(new KeyedService(key, service));
+        return this;
+    }
+
+    //#endregion
+
+    //#region Generic
+
+    /**
+     * Adds a scoped service of the given generic type and implementation to the collection.<br>
+     * The service is resolved as the generic type, for example {@code Repository<User>}, and injected into parameters of that type.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addScoped(TypeReference<T> serviceType, Class<? extends T> implementationClass) {
+        return addGeneric(serviceType, new ScopedService<>(serviceType.getRawType(), implementationClass, null, null));
+    }
+
+    /**
+     * Adds a scoped service of the given generic type and factory to the collection.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addScoped(TypeReference<T> serviceType, Function<ServiceProvider, Object> factory) {
+        return addGeneric(serviceType, new ScopedService(serviceType.getRawType(), null, factory, null));
+    }
+
+    /**
+     * Adds a singleton service of the given generic type and implementation to the collection.<br>
+     * The service is resolved as the generic type, for example {@code Repository<User>}, and injected into parameters of that type.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addSingleton(TypeReference<T> serviceType, Class<? extends T> implementationClass) {
+        return addGeneric(serviceType, new SingletonService<>(serviceType.getRawType(), null, implementationClass, null, null));
+    }
+
+    /**
+     * Adds a singleton service of the given generic type and factory to the collection.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addSingleton(TypeReference<T> serviceType, Function<ServiceProvider, Object> factory) {
+        return addGeneric(serviceType, new SingletonService(serviceType.getRawType(), null, null, factory, null));
+    }
+
+    /**
+     * Adds a singleton service of the given generic type and instance to the collection.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param serviceInstance the instance of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addSingleton(TypeReference<T> serviceType, T serviceInstance) {
+        return addGeneric(serviceType, new SingletonService<>(serviceType.getRawType(), serviceInstance, null, null, null));
+    }
+
+    /**
+     * Adds a transient service of the given generic type and implementation to the collection.<br>
+     * The service is resolved as the generic type, for example {@code Repository<User>}, and injected into parameters of that type.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param implementationClass the implementation of the service to add
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addTransient(TypeReference<T> serviceType, Class<? extends T> implementationClass) {
+        return addGeneric(serviceType, new TransientService<>(serviceType.getRawType(), implementationClass, null, null));
+    }
+
+    /**
+     * Adds a transient service of the given generic type and factory to the collection.
+     *
+     * @param serviceType the generic type of the service to add
+     * @param factory the factory to use to create the service instance
+     * @param <T> the type of the service to add
+     * @return the service collection builder
+     */
+    public <T> ServiceCollectionBuilder addTransient(TypeReference<T> serviceType, Function<ServiceProvider, Object> factory) {
+        return addGeneric(serviceType, new TransientService(serviceType.getRawType(), null, factory, null));
+    }
+
+    private ServiceCollectionBuilder addGeneric(TypeReference<?> serviceType, IService service) {
+        services.add(new GenericService(serviceType.getType(), service));
         return this;
     }
 
+    /**
+     * Adds a scoped service for every type argument of a generic class, for example {@code Repository<T>} implemented by {@code JdbcRepository<T>}.<br>
+     * Every closed type that is requested, such as {@code Repository<User>}, is served by the implementation closed with the same
+     * type arguments. The closed service is planned once, when it is first requested or injected. Services added for a closed type take precedence.
+     *
+     * @param serviceClass the generic class of the service
+     * @param implementationClass the generic implementation, it must pass its type parameters on to the service class
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder addOpenGenericScoped(Class<?> serviceClass, Class<?> implementationClass) {
+        services.add(new OpenGeneric(serviceClass, implementationClass, ServiceType.SCOPED));
+        return this;
+    }
+
+    /**
+     * Adds a singleton service for every type argument of a generic class, see {@link #addOpenGenericScoped(Class, Class)}.<br>
+     * Every closed type has its own singleton instance.
+     *
+     * @param serviceClass the generic class of the service
+     * @param implementationClass the generic implementation, it must pass its type parameters on to the service class
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder addOpenGenericSingleton(Class<?> serviceClass, Class<?> implementationClass) {
+        services.add(new OpenGeneric(serviceClass, implementationClass, ServiceType.SINGLETON));
+        return this;
+    }
+
+    /**
+     * Adds a transient service for every type argument of a generic class, see {@link #addOpenGenericScoped(Class, Class)}.
+     *
+     * @param serviceClass the generic class of the service
+     * @param implementationClass the generic implementation, it must pass its type parameters on to the service class
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder addOpenGenericTransient(Class<?> serviceClass, Class<?> implementationClass) {
+        services.add(new OpenGeneric(serviceClass, implementationClass, ServiceType.TRANSIENT));
+        return this;
+    }
+
+    //#endregion
+
+    //#region Indexed
+
+    /**
+     * Adds every service listed in the service index written by the di4j annotation processor, see {@link ServiceIndex}.<br>
+     * Every class annotated with {@link org.di4j.di4j.annotations.Injectable} is registered with the lifetime and type of its annotation.
+     * The index is read with the context class loader of the current thread, or the class loader of DI4J if there is none.<br>
+     * Services added after this call take precedence over indexed services of the same type.
+     *
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder addIndexed() {
+        var loader = Thread.currentThread().getContextClassLoader();
+        return addIndexed(loader != null ? loader : ServiceCollectionBuilder.class.getClassLoader());
+    }
+
+    /**
+     * Adds every service listed in the service indexes visible to the given class loader, see {@link #addIndexed()}.
+     *
+     * @param loader the class loader to read the indexes and load the services with
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder addIndexed(ClassLoader loader) {
+        for (ServiceIndex.Entry entry : ServiceIndex.read(loader)) {
+            addIndexed(entry.lifetime(), entry.type(), entry.implementation());
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void addIndexed(ServiceLifetime lifetime, Class<T> type, Class<?> implementation) {
+        var implementationClass = implementation == type ? null : (Class<? extends T>) implementation;
+        switch (lifetime) {
+            case SINGLETON -> services.add(new SingletonService<>(type, null, implementationClass, null, null));
+            case SCOPED -> services.add(new ScopedService<>(type, implementationClass, null, null));
+            case TRANSIENT -> services.add(new TransientService<>(type, implementationClass, null, null));
+            case INJECTION_ONLY -> throw new IllegalArgumentException("Injection-only services cannot be indexed");
+            case POOLED -> throw new IllegalArgumentException("Pooled services cannot be indexed");
+        }
+    }
+
     //#endregion
 
+    //#region Warm-up
+
+    /**
+     * Creates all singleton services when the service provider is built, on the common {@link ForkJoinPool}.<br>
+     * {@link #build()} waits until every singleton has been created.
+     *
+     * @return the service collection builder
+     * @see RootServiceProvider#warmUpAsync(Executor)
+     */
+    public ServiceCollectionBuilder warmUpSingletons() {
+        return warmUpSingletons(ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * Creates all singleton services when the service provider is built, on the given executor.<br>
+     * When running in the background {@link #build()} returns immediately and the warm-up can be observed through {@link RootServiceProvider#getWarmUp()}.
+     *
+     * @param executor the executor to create the singletons on
+     * @param inBackground true to return from {@link #build()} while the singletons are still being created, false to wait for them
+     * @return the service collection builder
+     * @see RootServiceProvider#warmUpAsync(Executor)
+     */
+    public ServiceCollectionBuilder warmUpSingletons(Executor executor, boolean inBackground) {
+        this.warmUpExecutor = executor;
+        this.warmUpInBackground = inBackground;
+        return this;
+    }
+
+    //#endregion
+
+    /**
+     * Sets the listener that is notified whenever a service is resolved, for example {@link org.di4j.di4j.metrics.ResolutionMetrics}.
+     *
+     * @param listener the listener to notify, or null to not notify a listener
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder setResolutionListener(ResolutionListener listener) {
+        this.resolutionListener = listener;
+        return this;
+    }
+
+    /**
+     * Adds a listener that is notified whenever a service is resolved, next to the listeners that were set or added before.<br>
+     * For example {@link org.di4j.di4j.metrics.ResolutionMetrics} and {@link org.di4j.di4j.metrics.ResolutionEvents} can be installed together.
+     *
+     * @param listener the listener to notify
+     * @return the service collection builder
+     * @see ResolutionListener#of(ResolutionListener...)
+     */
+    public ServiceCollectionBuilder addResolutionListener(ResolutionListener listener) {
+        this.resolutionListener = resolutionListener != null ? ResolutionListener.of(resolutionListener, listener) : ResolutionListener.of(listener);
+        return this;
+    }
+
+    /**
+     * Makes scopes close the {@link AutoCloseable} transient and injection-only instances they create when the scope is closed.<br>
+     * Scoped instances are always closed with their scope.
+     *
+     * @return the service collection builder
+     * @see ServiceScope#close()
+     */
+    public ServiceCollectionBuilder disposeTransientsWithScope() {
+        this.disposeTransients = true;
+        return this;
+    }
+
+    /**
+     * Keeps a binary snapshot of the analysed service graph in the given file, see {@link ServiceGraphSnapshot}.<br>
+     * If the file matches the registrations and the class path, {@link #build()} uses the constructors and load levels recorded
+     * in it instead of inspecting every class. Otherwise the classes are inspected and the file is written for the next build.
+     *
+     * @param file the snapshot file
+     * @return the service collection builder
+     */
+    public ServiceCollectionBuilder useGraphSnapshot(Path file) {
+        this.snapshotFile = file;
+        return this;
+    }
+
     /**
      * Builds the {@link org.di4j.di4j.registry.ServiceRegistry} and creates a {@link RootServiceProvider} from the registered services<br>
-     * The {@link ServiceScope} will be registered as a transient service that creates a new scope and {@link RootServiceProvider} will be registered as a singleton service
+     * The {@link ServiceScope} will be registered as a transient service that creates a new scope and {@link RootServiceProvider} will be registered as a singleton service<br>
+     * If a warm-up was requested with {@link #warmUpSingletons(Executor, boolean)} the singletons are created before (or while) the provider is returned
      * @return A {@link RootServiceProvider} that has all services registered
      */
     public RootServiceProvider build() {
-        var serviceMap = new HashMap<Class<?>, Service<?>>();
+        var registrations = new ArrayList<Service<?>>(services.size() + 2);
 
-        services.forEach((clazz, service) -> serviceMap.put(clazz, constructService(service)));
+        byte[] fingerprint = null;
+        ServiceGraphSnapshot snapshot = null;
+        if(snapshotFile != null) {
+            fingerprint = ServiceGraphSnapshot.fingerprint(services.stream().map(ServiceCollectionBuilder::describe).toList());
+            snapshot = ServiceGraphSnapshot.read(snapshotFile, fingerprint);
+        }
+        var openGenerics = new ArrayList<OpenGenericService>();
+        for (IService service : services) {
+            if(service instanceof OpenGeneric openGeneric) openGenerics.add(toOpenGenericService(openGeneric));
+            else registrations.add(constructService(service, snapshot, registrations.size()));
+        }
 
         // Register the ServiceScope as a transient service to allow services to get a new scope if wanted
         var scopeService = new Service<ServiceScope>(ServiceScope.class, ServiceProvider::getScope);
         scopeService.setTransient(true);
-        serviceMap.put(ServiceScope.class, scopeService);
+        registrations.add(scopeService);
 
         // Register the RootServiceProvider as a service to allow getting the RootServiceProvider
         var rootServiceProviderService = new Service<RootServiceProvider>(RootServiceProvider.class, RootServiceProvider.class::cast);
         rootServiceProviderService.setSingleton(true); // Setting this to a singleton will force this to run in the root service provider
-        serviceMap.put(RootServiceProvider.class, rootServiceProviderService);
+        registrations.add(rootServiceProviderService);
+
+        var registry = new ServiceRegistry(registrations, openGenerics);
+        if(snapshot != null) {
+            snapshot.applyLoadLevels(registry);
+        } else if(snapshotFile != null) {
+            try {
+                ServiceGraphSnapshot.write(snapshotFile, fingerprint, registry);
+            } catch (IOException e) {
+                // The snapshot only speeds up the next build, the provider works without it
+            }
+        }
+        if(resolutionListener != null) registry.setResolutionListener(resolutionListener);
+        registry.setTrackingTransientDisposables(disposeTransients);
+        return warmUp(new RootServiceProvider(registry));
+    }
+
+    /**
+     * Builds a child of the given service provider that overlays the registered services on the registrations of the parent,
+     * see {@link ServiceRegistry#overlay(List, List)}.<br>
+     * The child shares the registrations and singletons of the parent that do not depend on a service registered here, so building
+     * a child for every tenant only creates what differs from the parent. Services registered here replace every registration of their type in the child.
+     * Services of the parent created by a factory that does not declare its dependencies are re-created in the child, together with their dependents.<br>
+     * The child keeps the resolution listener and the disposal of transients of the parent unless they are set on this builder.
+     * Graph snapshots are not used for children.
+     *
+     * @param parent the service provider to overlay
+     * @return a {@link RootServiceProvider} that resolves the registered services and shares the other services of the parent
+     */
+    public RootServiceProvider buildChild(RootServiceProvider parent) {
+        var overrides = new ArrayList<Service<?>>(services.size() + 1);
+        var openGenerics = new ArrayList<OpenGenericService>();
+        constructOverrides(overrides, openGenerics);
+
+        // The child must return itself, not the provider the parent created its singleton for
+        var rootServiceProviderService = new Service<RootServiceProvider>(RootServiceProvider.class, RootServiceProvider.class::cast);
+        rootServiceProviderService.setSingleton(true);
+        overrides.add(rootServiceProviderService);
+
+        return warmUp(new RootServiceProvider(overlay(parent.getRegistry(), overrides, openGenerics)));
+    }
+
+    /**
+     * Adds the registered services to the given running provider, replacing every registration of their type.<br>
+     * The new registry replaces the current one (see {@link ServiceRegistry#replace(List, List)}) and is published atomically:
+     * resolutions and scopes that started before the update keep using the previous registry, everything after it uses the new one.
+     * Only the singletons that depend on a registered type, directly or transitively, are created again, every other singleton is kept.
+     * The {@link AutoCloseable} singletons that were replaced are closed once the new registry is published, unless children were built from the provider.<br>
+     * The new registry does not refer to the previous one, so a provider can be updated any number of times, but every update copies the lookups
+     * of the registry and is meant for occasional changes such as switching a feature-flagged implementation.
+     * Children built from the provider before the update keep the registrations they were built with.
+     * If a warm-up was requested with {@link #warmUpSingletons(Executor, boolean)} the re-created singletons are created right away.
+     *
+     * @param provider the running provider to update
+     * @throws ScopeDisposalException if one or more replaced singletons could not be closed, after the update was applied
+     */
+    public void update(RootServiceProvider provider) {
+        var overrides = new ArrayList<Service<?>>(services.size());
+        var openGenerics = new ArrayList<OpenGenericService>();
+        constructOverrides(overrides, openGenerics);
+        try {
+            provider.updateRegistry(registry -> configure(registry.replace(overrides, openGenerics)));
+        } finally {
+            warmUp(provider);
+        }
+    }
+
+    private void constructOverrides(List<Service<?>> overrides, List<OpenGenericService> openGenerics) {
+        for (IService service : services) {
+            if(service instanceof OpenGeneric openGeneric) openGenerics.add(toOpenGenericService(openGeneric));
+            else overrides.add(constructService(service, null, overrides.size()));
+        }
+    }
+
+    private ServiceRegistry overlay(ServiceRegistry registry, List<Service<?>> overrides, List<OpenGenericService> openGenerics) {
+        return configure(registry.overlay(overrides, openGenerics));
+    }
+
+    private ServiceRegistry configure(ServiceRegistry registry) {
+        if(resolutionListener != null) registry.setResolutionListener(resolutionListener);
+        if(disposeTransients) registry.setTrackingTransientDisposables(true);
+        return registry;
+    }
+
+    private RootServiceProvider warmUp(RootServiceProvider provider) {
+        if(warmUpExecutor != null) {
+            if(warmUpInBackground) provider.warmUpAsync(warmUpExecutor);
+            else provider.warmUp(warmUpExecutor);
+        }
+        return provider;
+    }
 
-        var registry = new ServiceRegistry(serviceMap);
-        return new RootServiceProvider(registry);
+    private static OpenGenericService toOpenGenericService(OpenGeneric openGeneric) {
+        return new OpenGenericService(openGeneric.clazz, openGeneric.implementationClazz, ServiceLifetime.valueOf(openGeneric.type.name()));
     }
 
-    private <T> Service<T> constructService(IService typeService) {
+    private <T> Service<T> constructService(IService typeService, ServiceGraphSnapshot snapshot, int index) {
+        if(typeService instanceof KeyedService keyedService) {
+            Service<T> service = constructService(keyedService.service, snapshot, index);
+            service.setKey(keyedService.key);
+            return service;
+        }
+        if(typeService instanceof GenericService genericService) {
+            Service<T> service = constructService(genericService.service, snapshot, index);
+            service.setServiceType(genericService.type);
+            return service;
+        }
+
         Service<T> service = null;
         switch (typeService.getType()) {
             case SCOPED -> {
                 var scopedService = (ScopedService<T>) typeService;
                 if (scopedService.implementationClazz != null) {
-                    service = new Service<>(scopedService.clazz, scopedService.implementationClazz);
+                    service = newService(scopedService.clazz, scopedService.implementationClazz, snapshot, index);
                 } else if(scopedService.factory != null) {
                     service = new Service<>(scopedService.clazz, scopedService.factory);
+                    if(scopedService.dependencies != null) service.setDeclaredDependencies(scopedService.dependencies);
                 } else {
-                    service = new Service<>(scopedService.clazz);
+                    service = newService(scopedService.clazz, null, snapshot, index);
                 }
                 service.setScoped(true);
             }
@@ -216,22 +877,24 @@ public class ServiceCollectionBuilder {
                 if (singletonService.instance != null) {
                     service = new Service<>(singletonService.clazz, singletonService.instance);
                 } else if (singletonService.implementationClazz != null) {
-                    service = new Service<>(singletonService.clazz, singletonService.implementationClazz);
+                    service = newService(singletonService.clazz, singletonService.implementationClazz, snapshot, index);
                 } else if(singletonService.factory != null) {
                     service = new Service<>(singletonService.clazz, singletonService.factory);
+                    if(singletonService.dependencies != null) service.setDeclaredDependencies(singletonService.dependencies);
                 } else {
-                    service = new Service<>(singletonService.clazz);
+                    service = newService(singletonService.clazz, null, snapshot, index);
                 }
                 service.setSingleton(true);
             }
             case TRANSIENT-> {
                 var transientService = (TransientService<T>) typeService;
                 if (transientService.implementationClazz != null) {
-                    service = new Service<>(transientService.clazz, transientService.implementationClazz);
+                    service = newService(transientService.clazz, transientService.implementationClazz, snapshot, index);
                 } else if(transientService.factory != null) {
                     service = new Service<>(transientService.clazz, transientService.factory);
+                    if(transientService.dependencies != null) service.setDeclaredDependencies(transientService.dependencies);
                 } else {
-                    service = new Service<>(transientService.clazz);
+                    service = newService(transientService.clazz, null, snapshot, index);
                 }
                 service.setTransient(true);
             }
@@ -239,31 +902,99 @@ public class ServiceCollectionBuilder {
                 var injectionOnlyService = (InjectionOnlyService<T>) typeService;
                 service = new Service<>(injectionOnlyService.clazz, injectionOnlyService.factory);
             }
+            case POOLED -> {
+                var pooledService = (PooledService<T>) typeService;
+                if (pooledService.implementationClazz != null) {
+                    service = newService(pooledService.clazz, pooledService.implementationClazz, snapshot, index);
+                } else if(pooledService.factory != null) {
+                    service = new Service<>(pooledService.clazz, pooledService.factory);
+                } else {
+                    service = newService(pooledService.clazz, null, snapshot, index);
+                }
+                service.setPooled(pooledService.capacity, pooledService.reset);
+            }
         }
 
         return service;
     }
 
+    private static <T> Service<T> newService(Class<T> clazz, Class<? extends T> implementation, ServiceGraphSnapshot snapshot, int index) {
+        if(snapshot != null) return snapshot.newService(index, clazz, implementation);
+        return implementation != null ? new Service<>(clazz, implementation) : new Service<>(clazz);
+    }
+
+    /**
+     * Describes a registration for the fingerprint of a {@link ServiceGraphSnapshot}.
+     */
+    private static String describe(IService typeService) {
+        if(typeService instanceof KeyedService keyedService) return describe(keyedService.service) + " key " + keyedService.key;
+        if(typeService instanceof GenericService genericService) return describe(genericService.service) + " as " + genericService.type.getTypeName();
+        if(typeService instanceof OpenGeneric openGeneric) return "OPEN_GENERIC " + describe(typeService, openGeneric.clazz, openGeneric.implementationClazz, false, null);
+        return switch (typeService.getType()) {
+            case SCOPED -> {
+                var service = (ScopedService<?>) typeService;
+                yield describe(typeService, service.clazz, service.implementationClazz, service.factory != null, service.dependencies);
+            }
+            case SINGLETON -> {
+                var service = (SingletonService<?>) typeService;
+                yield describe(typeService, service.clazz, service.implementationClazz, service.factory != null || service.instance != null, service.dependencies);
+            }
+            case TRANSIENT -> {
+                var service = (TransientService<?>) typeService;
+                yield describe(typeService, service.clazz, service.implementationClazz, service.factory != null, service.dependencies);
+            }
+            case INJECTION_ONLY -> describe(typeService, ((InjectionOnlyService<?>) typeService).clazz, null, true, null);
+            case POOLED -> {
+                var service = (PooledService<?>) typeService;
+                yield describe(typeService, service.clazz, service.implementationClazz, service.factory != null, null) + " capacity " + service.capacity;
+            }
+        };
+    }
+
+    private static String describe(IService typeService, Class<?> clazz, Class<?> implementation, boolean factory, Class<?>[] dependencies) {
+        return typeService.getType() + " " + clazz.getName()
+                + " " + (implementation != null ? implementation.getName() : factory ? "<factory>" : "<class>")
+                + (dependencies != null ? " " + Arrays.stream(dependencies).map(Class::getName).toList() : "");
+    }
+
 
     private interface IService { ServiceType getType(); }
-    private record ScopedService<T>(Class<T> clazz, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory) implements IService {
+    private record ScopedService<T>(Class<T> clazz, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory, Class<?>[] dependencies) implements IService {
         @Override
         public ServiceType getType() {
             return ServiceType.SCOPED;
         }
     }
-    private record SingletonService<T>(Class<T> clazz, T instance, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory) implements IService {
+    private record SingletonService<T>(Class<T> clazz, T instance, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory, Class<?>[] dependencies) implements IService {
         @Override
         public ServiceType getType() {
             return ServiceType.SINGLETON;
         }
     }
-    private record TransientService<T>(Class<T> clazz, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory) implements IService {
+    private record TransientService<T>(Class<T> clazz, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory, Class<?>[] dependencies) implements IService {
         @Override
         public ServiceType getType() {
             return ServiceType.TRANSIENT;
         }
     }
+    private record KeyedService(Object key, IService service) implements IService {
+        @Override
+        public ServiceType getType() {
+            return service.getType();
+        }
+    }
+    private record GenericService(Type type, IService service) implements IService {
+        @Override
+        public ServiceType getType() {
+            return service.getType();
+        }
+    }
+    private record OpenGeneric(Class<?> clazz, Class<?> implementationClazz, ServiceType type) implements IService {
+        @Override
+        public ServiceType getType() {
+            return type;
+        }
+    }
     private record InjectionOnlyService<T>(Class<T> clazz, BiFunction<ServiceProvider, Class<?>, ? extends T> factory) implements IService {
         @Override
         public ServiceType getType() {
@@ -271,5 +1002,11 @@ public class ServiceCollectionBuilder {
         }
     }
 
-    private enum ServiceType { SCOPED, SINGLETON, TRANSIENT, INJECTION_ONLY }
+    private record PooledService<T>(Class<T> clazz, Class<? extends T> implementationClazz, Function<ServiceProvider, T> factory, int capacity, Consumer<? super T> reset) implements IService {
+        @Override
+        public ServiceType getType() {
+            return ServiceType.POOLED;
+        }
+    }
+    private enum ServiceType { SCOPED, SINGLETON, TRANSIENT, INJECTION_ONLY, POOLED }
 }
@@ -1,14 +1,21 @@
 package org.di4j.di4j;
 
 import org.di4j.di4j.exceptions.CannotUseScopedServiceInRootScopeException;
+import org.di4j.di4j.exceptions.CircularDependencyException;
 import org.di4j.di4j.exceptions.ClassNotAssignableException;
+import org.di4j.di4j.exceptions.DI4JException;
 import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
 import org.di4j.di4j.exceptions.InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException;
 import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
 import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.ResolutionException;
 import org.di4j.di4j.exceptions.ServiceNotFoundException;
+import org.di4j.di4j.registry.Service;
 import org.di4j.di4j.scope.ServiceScope;
 
+import java.lang.reflect.Type;
+import java.util.List;
+
 /**
  * The service provider class represents a service provider for a service hierarchy.<br>
  * It contains a map of singleton services and provides methods to retrieve a service instance from the root scope.<br>
@@ -42,12 +49,152 @@ public abstract class ServiceProvider {
      */
     public abstract <T> T getService(Class<T> type, Class<?> context);
 
+    /**
+     * Gets a service registered as a generic type, for example {@code getService(new TypeReference<Repository<User>>() {})},
+     * or returns null if the service was not found
+     * @param type The generic type of the service to get an instance for
+     * @return The instance for the service or null if the service has not been registered
+     * @param <T> The type of the service to lookup
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getService(TypeReference<T> type) {
+        return (T) getService(type.getType(), null);
+    }
+
+    /**
+     * Retrieves a service instance of the given type, which may be a parameterized type, using the given context.<br>
+     * Parameterized types are resolved by the service registered as that type, or by closing an open generic service of its raw class.
+     *
+     * @param type the closed type of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @return the service instance of the given type, or null if the service is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public abstract Object getService(Type type, Class<?> context);
+
+    /**
+     * Retrieves an instance of the service of the given type that was registered with the given key.<br>
+     * Keyed services are not returned by {@link #getService(Class)} or {@link #getServices(Class)}, they have to be requested with their key.
+     *
+     * @param type the type of the service to retrieve
+     * @param key the key the service was registered with
+     * @param <T> the type of the service to retrieve
+     * @return the service instance, or null if no service of the type is registered with the key
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    public abstract <T> T getKeyedService(Class<T> type, Object key);
+
+    /**
+     * Retrieves an instance of every service registered as the given type, in registration order.<br>
+     * The instances keep the lifetime of their registrations. If every registration is a singleton the same list is returned
+     * every time, see {@link org.di4j.di4j.registry.MultiBinding}.
+     *
+     * @param type the type of the services to retrieve
+     * @param <T> the type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if a service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    public abstract <T> List<T> getServices(Class<T> type);
+
+    /**
+     * Retrieves an instance of every service registered as the given generic type, in registration order, see {@link #getServices(Class)}.
+     *
+     * @param type the generic type of the services to retrieve
+     * @param <T> the type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getServices(TypeReference<T> type) {
+        return (List<T>) getServices(type.getType());
+    }
+
+    /**
+     * Retrieves an instance of every service registered as the given type, which may be a parameterized type, in registration order.
+     *
+     * @param type the closed type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if a service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    public abstract List<?> getServices(Type type);
+
+    /**
+     * Retrieves a service instance for the given registration using the given context.<br>
+     * This is used by the resolution plan to resolve dependencies that were linked when the registry was created,
+     * without looking the registration up by class again.
+     *
+     * @param service the registration of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @param <T> the type of the service to retrieve
+     * @return the service instance for the given registration
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public <T> T resolve(Service<T> service, Class<?> context) {
+        return resolve(service, context, 0);
+    }
+
+    /**
+     * Retrieves a service instance for the given registration as a dependency on the current resolution path.<br>
+     * The depth is the number of services that are being created on the path, it is the only state kept while resolving,
+     * so the dependency path is only collected when the resolution fails (see {@link org.di4j.di4j.exceptions.ResolutionException}).
+     * A path that is deeper than the number of registered services must repeat a service and fails with a {@link CircularDependencyException}.
+     *
+     * @param service the registration of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @param depth the number of services that are being created on the current resolution path
+     * @param <T> the type of the service to retrieve
+     * @return the service instance for the given registration
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws CannotUseScopedServiceInRootScopeException if the service is a scoped service and cannot be used in the root scope
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public abstract <T> T resolve(Service<T> service, Class<?> context, int depth);
+
     /**
      * Gets a new service scope that can be used to get scoped services
      * @return A new service scope
      */
     public abstract ServiceScope getScope();
 
+    /**
+     * Hands an instance of a pooled service back to the pool of its registration, see {@link org.di4j.di4j.registry.ServiceLifetime#POOLED}.<br>
+     * Instances resolved from a scope go back when the scope is reset or closed, releasing them earlier makes them available sooner.
+     * Instances resolved outside a scope are only reused once they are released. The instance must not be used after it was released.<br>
+     * Nothing happens if the type is not registered as a pooled service.
+     *
+     * @param type the type the service was resolved as
+     * @param instance the instance to release, resolved from this provider
+     * @param <T> the type of the service
+     */
+    public abstract <T> void releaseService(Class<T> type, T instance);
+
 
     /**
      * Gets a service or throws an exception if the service was not found
@@ -62,4 +209,68 @@ public abstract class ServiceProvider {
         return service;
     }
 
+    /**
+     * Gets a service registered as a generic type or throws an exception if the service was not found
+     * @param type The generic type of the service to get an instance for
+     * @return The instance for the service
+     * @param <T> The type of the service to lookup
+     * @throws ServiceNotFoundException If the service was not found this exception is thrown
+     */
+    public <T> T getRequiredService(TypeReference<T> type) {
+        T service = getService(type);
+        if(service == null) throw new ServiceNotFoundException("The service of type " + type.getType().getTypeName() + " was not found");
+        return service;
+    }
+
+    /**
+     * Gets a keyed service or throws an exception if the service was not found
+     * @param type The type of the service to get an instance for
+     * @param key The key the service was registered with
+     * @return The instance for the service
+     * @param <T> The type of the service to lookup
+     * @throws ServiceNotFoundException If the service was not found this exception is thrown
+     */
+    public <T> T getRequiredKeyedService(Class<T> type, Object key) {
+        T service = getKeyedService(type, key);
+        if(service == null) throw new ServiceNotFoundException("The service of type " + type.getName() + " with the key " + key + " was not found");
+        return service;
+    }
+
+    /**
+     * Gets a service without throwing if it is not registered or cannot be created.<br>
+     * A service that is not registered returns a shared missing result, no exception is created. If the service or one of its
+     * dependencies cannot be created the exception is kept in the result. The {@link ResolutionException}s created while the service
+     * is resolved do not capture a stack trace, see {@link ResolutionException#setStackTracesEnabledOnThread(boolean)}, their dependency path is kept.
+     * @param type The type of the service to get an instance for
+     * @return The result holding the instance, the exception, or neither if the service has not been registered
+     * @param <T> The type of the service to lookup
+     */
+    public <T> ServiceResult<T> tryGetService(Class<T> type) {
+        var stackTraces = ResolutionException.setStackTracesEnabledOnThread(false);
+        try {
+            return ServiceResult.of(getService(type));
+        } catch (DI4JException e) {
+            return ServiceResult.failed(e);
+        } finally {
+            ResolutionException.setStackTracesEnabledOnThread(stackTraces);
+        }
+    }
+
+    /**
+     * Gets a service registered as a generic type without throwing, see {@link #tryGetService(Class)}.
+     * @param type The generic type of the service to get an instance for
+     * @return The result holding the instance, the exception, or neither if the service has not been registered
+     * @param <T> The type of the service to lookup
+     */
+    public <T> ServiceResult<T> tryGetService(TypeReference<T> type) {
+        var stackTraces = ResolutionException.setStackTracesEnabledOnThread(false);
+        try {
+            return ServiceResult.of(getService(type));
+        } catch (DI4JException e) {
+            return ServiceResult.failed(e);
+        } finally {
+            ResolutionException.setStackTracesEnabledOnThread(stackTraces);
+        }
+    }
+
 }
@@ -0,0 +1,113 @@
+package org.di4j.di4j;
+
+import org.di4j.di4j.exceptions.DI4JException;
+import org.di4j.di4j.exceptions.ServiceNotFoundException;
+
+import java.util.Optional;
+
+/**
+ * The `ServiceResult` class is the outcome of {@link ServiceProvider#tryGetService(Class)}: the instance of the service,
+ * the information that the service is not registered, or the exception that prevented the service from being created.<br>
+ * Looking up a service that is not registered does not create an exception, the missing result is shared.<br>
+ *
+ * @param <T> the type of the service
+ */
+public final class ServiceResult<T> {
+
+    private static final ServiceResult<?> MISSING = new ServiceResult<>(null, null);
+
+    private final T instance;
+    private final DI4JException error;
+
+    private ServiceResult(T instance, DI4JException error) {
+        this.instance = instance;
+        this.error = error;
+    }
+
+    static <T> ServiceResult<T> of(T instance) {
+        return instance != null ? new ServiceResult<>(instance, null) : missing();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ServiceResult<T> missing() {
+        return (ServiceResult<T>) MISSING;
+    }
+
+    static <T> ServiceResult<T> failed(DI4JException error) {
+        return new ServiceResult<>(null, error);
+    }
+
+    /**
+     * Returns whether the service was resolved.
+     *
+     * @return true if the result holds an instance of the service
+     */
+    public boolean isPresent() {
+        return instance != null;
+    }
+
+    /**
+     * Returns whether the service could not be created, for example because one of its dependencies is not registered.
+     *
+     * @return true if the result holds the exception that was thrown while the service was resolved
+     */
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns the instance of the service.
+     *
+     * @return the instance, or null if the service is not registered or could not be created
+     */
+    public T getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the exception that was thrown while the service was resolved.
+     *
+     * @return the exception, or null if the service was resolved or is not registered
+     */
+    public DI4JException getError() {
+        return error;
+    }
+
+    /**
+     * Returns the instance of the service, or the given value if there is none.
+     *
+     * @param other the value to return if the service was not resolved
+     * @return the instance or the given value
+     */
+    public T orElse(T other) {
+        return instance != null ? instance : other;
+    }
+
+    /**
+     * Returns the instance of the service, or throws the exception a failed resolution would have thrown.
+     *
+     * @return the instance of the service
+     * @throws DI4JException the exception that was thrown while the service was resolved
+     * @throws ServiceNotFoundException if the service is not registered
+     */
+    public T orElseThrow() {
+        if(instance != null) return instance;
+        if(error != null) throw error;
+        throw new ServiceNotFoundException("The service was not found");
+    }
+
+    /**
+     * Returns the instance of the service as an {@link Optional}, dropping the exception of a failed resolution.
+     *
+     * @return an optional of the instance, empty if the service was not resolved
+     */
+    public Optional<T> toOptional() {
+        return Optional.ofNullable(instance);
+    }
+
+    @Override
+    public String toString() {
+        if(instance != null) return "ServiceResult[" + instance + "]";
+        return error != null ? "ServiceResult[failed: " + error.getMessage() + "]" : "ServiceResult[missing]";
+    }
+}
@@ -0,0 +1,63 @@
+package org.di4j.di4j;
+
+import org.di4j.di4j.registry.GenericTypes;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * The `TypeReference` class captures a generic type, so services can be registered and resolved as parameterized types.<br>
+ * It is created as an anonymous subclass, for example {@code new TypeReference<Repository<User>>() {}}, and reads its type argument
+ * once when it is created. References can be kept in constants and reused, the captured type is already a canonical lookup key.<br>
+ *
+ * @param <T> the type to capture, must not contain type variables or wildcards
+ */
+public abstract class TypeReference<T> {
+
+    private final Type type;
+
+    /**
+     * Captures the type argument of the anonymous subclass.
+     *
+     * @throws IllegalArgumentException if the type argument is not closed
+     * @throws IllegalStateException if the reference is not created with a type argument
+     */
+    protected TypeReference() {
+        if(!(getClass().getGenericSuperclass() instanceof ParameterizedType superclass)) throw new IllegalStateException("A TypeReference must be created with a type argument, for example new TypeReference<List<String>>() {}");
+        this.type = GenericTypes.canonicalize(superclass.getActualTypeArguments()[0]);
+    }
+
+    /**
+     * Returns the captured type.
+     *
+     * @return the captured type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the class of the captured type, without its type arguments.
+     *
+     * @return the raw class of the captured type
+     */
+    @SuppressWarnings("unchecked")
+    public Class<T> getRawType() {
+        return (Class<T>) GenericTypes.getRawType(type);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof TypeReference<?> other && type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TypeReference<" + type.getTypeName() + ">";
+    }
+}
@@ -0,0 +1,37 @@
+package org.di4j.di4j.annotations;
+
+import org.di4j.di4j.registry.ServiceLifetime;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks a class as a service. The di4j annotation processor generates a<br>
+ * {@link org.di4j.di4j.registry.ServiceFactory} for every marked class, which is used instead of<br>
+ * reflection when the service is created. The constructor is chosen the same way as at runtime,<br>
+ * so classes with multiple constructors need a {@link ServiceProviderConstructor}.<br>
+ * The processor also lists every marked class in the service index, so it can be registered with<br>
+ * {@link org.di4j.di4j.ServiceCollectionBuilder#addIndexed()} using the {@link #lifetime()} and {@link #as()} of the annotation.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Injectable {
+
+    /**
+     * The lifetime the service is registered with by {@link org.di4j.di4j.ServiceCollectionBuilder#addIndexed()}.<br>
+     * {@link ServiceLifetime#INJECTION_ONLY} services need a factory and {@link ServiceLifetime#POOLED} services a capacity, they cannot be indexed.
+     *
+     * @return the lifetime of the service
+     */
+    ServiceLifetime lifetime() default ServiceLifetime.TRANSIENT;
+
+    /**
+     * The type the service is registered as, for example an interface the class implements.<br>
+     * Defaults to the marked class itself.
+     *
+     * @return the type to register the service as
+     */
+    Class<?> as() default void.class;
+}
@@ -0,0 +1,26 @@
+package org.di4j.di4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation marks a constructor parameter that is injected with a keyed service, see<br>
+ * {@link org.di4j.di4j.ServiceCollectionBuilder#addKeyedSingleton(Class, Object)}. The key is looked up once when the<br>
+ * service provider is built, so injecting a keyed service costs the same as injecting any other service.<br>
+ * It can also be put on {@link org.di4j.di4j.Lazy} and {@link org.di4j.di4j.Provider} parameters.<br>
+ * Keys can be any object, but the key of the annotation is a string. It matches the service registered with that string, or else the first<br>
+ * service whose key has the same {@link String#valueOf(Object) string value}, so a service registered with an enum constant is injected with its name.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ServiceKey {
+
+    /**
+     * The key of the service to inject.
+     *
+     * @return the key of the service
+     */
+    String value();
+}
@@ -0,0 +1,39 @@
+package org.di4j.di4j.exceptions;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Thrown when services depend on each other in a cycle.<br>
+ * The path starts with the service that was requested and ends with the first service that is repeated, so the cycle
+ * is the part of the path starting at the first occurrence of the last service.
+ */
+public class CircularDependencyException extends ResolutionException {
+
+    /**
+     * Constructs a new exception for the given dependency path.
+     * @param path the services in the cycle, the first service is repeated at the end of the path.
+     */
+    public CircularDependencyException(List<Class<?>> path) {
+        super("A circular dependency was found", path);
+    }
+
+    /**
+     * Returns the dependency path up to the first service that is repeated.
+     * @return the services leading into the cycle and the cycle itself
+     */
+    @Override
+    public List<Class<?>> getPath() {
+        var path = super.getPath();
+        var seen = new HashSet<Class<?>>();
+        for (int i = 0; i < path.size(); i++) {
+            if(!seen.add(path.get(i))) return path.subList(0, i + 1);
+        }
+        return path;
+    }
+
+    @Override
+    public String getMessage() {
+        return "A circular dependency was found: " + format(getPath());
+    }
+}
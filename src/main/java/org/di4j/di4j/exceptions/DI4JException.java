@@ -35,4 +35,14 @@ public class DI4JException extends RuntimeException {
     public DI4JException(Throwable cause) {
         super(cause);
     }
+
+    /**
+     * Constructs a new exception with the specified detail message and cause, optionally without a stack trace.
+     * @param message the detail message.
+     * @param cause the cause, or null.
+     * @param writableStackTrace whether the stack trace is captured, exceptions without one are much cheaper to create.
+     */
+    protected DI4JException(String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, true, writableStackTrace);
+    }
 }
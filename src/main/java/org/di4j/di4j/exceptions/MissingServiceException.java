@@ -1,9 +1,12 @@
 package org.di4j.di4j.exceptions;
 
+import java.util.List;
+
 /**
- * Thrown when a service is missing but was requested.
+ * Thrown when a service is missing but was requested.<br>
+ * The dependency path leading to the missing service is available with {@link #getPath()}.
  */
-public class MissingServiceException extends DI4JException{
+public class MissingServiceException extends ResolutionException {
     /**
      * Constructs a new exception with the specified detail message.
      * @param message the detail message.
@@ -11,4 +14,13 @@ public class MissingServiceException extends DI4JException{
     public MissingServiceException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new exception with the specified detail message and dependency path.
+     * @param message the detail message.
+     * @param path the dependency path, starting with the service that was requested.
+     */
+    public MissingServiceException(String message, List<Class<?>> path) {
+        super(message, path);
+    }
 }
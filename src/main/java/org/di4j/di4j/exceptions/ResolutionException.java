@@ -0,0 +1,106 @@
+package org.di4j.di4j.exceptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base class for exceptions that are thrown while the dependencies of a service are resolved.<br>
+ * The dependency path that led to the failure is collected while the resolution unwinds, so resolving services does not have
+ * to keep track of the path as long as nothing fails.<br>
+ * Code that probes for optional services may see these exceptions often. Capturing their stack trace can be turned off with
+ * {@link #setStackTracesEnabled(boolean)} or the system property {@code di4j.resolution.stackTraces=false}, or only for the current thread with
+ * {@link #setStackTracesEnabledOnThread(boolean)}. The dependency path is kept either way.
+ */
+public class ResolutionException extends DI4JException {
+
+    private static volatile boolean stackTraces = Boolean.parseBoolean(System.getProperty("di4j.resolution.stackTraces", "true"));
+    // Holds whether the current thread captures stack traces, a mutable holder so switching it does not box or allocate
+    private static final ThreadLocal<boolean[]> stackTracesOnThread = ThreadLocal.withInitial(() -> new boolean[] { true });
+
+    // The dependency path in reverse, the services add themselves to the end while the resolution unwinds
+    private final ArrayList<Class<?>> path = new ArrayList<>();
+
+    /**
+     * Constructs a new exception with the specified detail message.
+     * @param message the detail message.
+     */
+    public ResolutionException(String message) {
+        super(message, null, capturesStackTraces());
+    }
+
+    /**
+     * Constructs a new exception with the specified detail message and dependency path.
+     * @param message the detail message.
+     * @param path the dependency path, starting with the service that was requested.
+     */
+    public ResolutionException(String message, List<Class<?>> path) {
+        super(message, null, capturesStackTraces());
+        for (int i = path.size() - 1; i >= 0; i--) {
+            this.path.add(path.get(i));
+        }
+    }
+
+    /**
+     * Sets whether resolution exceptions that are created from now on capture their stack trace.
+     * @param enabled false to create resolution exceptions without a stack trace.
+     */
+    public static void setStackTracesEnabled(boolean enabled) {
+        stackTraces = enabled;
+    }
+
+    /**
+     * Returns whether resolution exceptions capture their stack trace.
+     * @return true if stack traces are captured, which is the default.
+     */
+    public static boolean isStackTracesEnabled() {
+        return stackTraces;
+    }
+
+    /**
+     * Sets whether resolution exceptions that the current thread creates from now on capture their stack trace.<br>
+     * Stack traces are only captured if they are enabled both globally and on the thread. The previous value should be restored
+     * once the thread is done, for example in a finally block.
+     * @param enabled false to create resolution exceptions on the current thread without a stack trace.
+     * @return whether stack traces were enabled on the current thread before.
+     */
+    public static boolean setStackTracesEnabledOnThread(boolean enabled) {
+        var holder = stackTracesOnThread.get();
+        var previous = holder[0];
+        holder[0] = enabled;
+        return previous;
+    }
+
+    private static boolean capturesStackTraces() {
+        return stackTraces && stackTracesOnThread.get()[0];
+    }
+
+    /**
+     * Adds a service in front of the dependency path, this is called by every service the resolution unwinds through.
+     * @param service the service that depends on the first service of the current path.
+     */
+    public void addDependent(Class<?> service) {
+        path.add(service);
+    }
+
+    /**
+     * Returns the dependency path that led to the failure, starting with the service that was requested.
+     * @return the dependency path
+     */
+    public List<Class<?>> getPath() {
+        var reversed = new ArrayList<Class<?>>(path);
+        Collections.reverse(reversed);
+        return Collections.unmodifiableList(reversed);
+    }
+
+    @Override
+    public String getMessage() {
+        var path = getPath();
+        if(path.size() < 2) return super.getMessage();
+        return super.getMessage() + " (dependency path: " + format(path) + ")";
+    }
+
+    static String format(List<Class<?>> path) {
+        return String.join(" -> ", path.stream().map(Class::getName).toList());
+    }
+}
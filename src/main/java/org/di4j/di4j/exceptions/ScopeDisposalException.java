@@ -0,0 +1,17 @@
+package org.di4j.di4j.exceptions;
+
+/**
+ * Thrown when one or more instances of a scope, or singletons replaced by an update, could not be disposed.<br>
+ * The first failure is the cause, every further failure is added as a suppressed exception.
+ */
+public class ScopeDisposalException extends DI4JException {
+
+    /**
+     * Constructs a new exception with the specified detail message and cause.
+     * @param message the detail message.
+     * @param cause the cause.
+     */
+    public ScopeDisposalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,38 @@
+package org.di4j.di4j.metrics;
+
+import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.scope.ServiceScope;
+
+/**
+ * The `CompositeResolutionListener` class notifies several listeners in order, see {@link ResolutionListener#of(ResolutionListener...)}.<br>
+ * The listeners are kept in an array, so notifying them does not allocate an iterator.<br>
+ */
+final class CompositeResolutionListener implements ResolutionListener {
+
+    private final ResolutionListener[] listeners;
+
+    CompositeResolutionListener(ResolutionListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onCacheHit(Service<?> service, int depth) {
+        for (ResolutionListener listener : listeners) {
+            listener.onCacheHit(service, depth);
+        }
+    }
+
+    @Override
+    public void onConstructed(Service<?> service, long durationNanos, int depth) {
+        for (ResolutionListener listener : listeners) {
+            listener.onConstructed(service, durationNanos, depth);
+        }
+    }
+
+    @Override
+    public void onScopeCreated(ServiceScope scope) {
+        for (ResolutionListener listener : listeners) {
+            listener.onScopeCreated(scope);
+        }
+    }
+}
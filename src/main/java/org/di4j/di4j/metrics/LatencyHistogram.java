@@ -0,0 +1,79 @@
+package org.di4j.di4j.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The `LatencyHistogram` class records durations in power-of-two buckets.<br>
+ * Recording is lock-free and does not allocate, percentiles are reported as the upper bound of the bucket they fall in.<br>
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+        total.add(nanos);
+        if(nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return the mean duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        var count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @return the longest duration in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded durations.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        var count = getCount();
+        if(count == 0) return 0;
+
+        var rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if(seen >= rank && seen > 0) return Math.min(i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,100 @@
+package org.di4j.di4j.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.scope.ServiceScope;
+
+/**
+ * The `ResolutionEvents` class is a {@link ResolutionListener} that emits JDK Flight Recorder events, so the activity of the container
+ * shows up in the recordings taken in production.<br>
+ * Every resolved service emits a {@link ServiceResolutionEvent} with its type, lifetime, whether an existing instance was returned,
+ * the construction time and the depth it was resolved at. Every new scope emits a {@link ScopeCreatedEvent}.<br>
+ * Nothing is emitted unless the listener is installed with {@link org.di4j.di4j.ServiceCollectionBuilder#setResolutionListener(ResolutionListener)},
+ * and an installed listener only creates events while a recording enables them. Use {@link org.di4j.di4j.ServiceCollectionBuilder#addResolutionListener(ResolutionListener)}
+ * to emit the events next to other listeners such as {@link ResolutionMetrics}.<br>
+ */
+public class ResolutionEvents implements ResolutionListener {
+
+    @Override
+    public void onCacheHit(Service<?> service, int depth) {
+        var event = new ServiceResolutionEvent();
+        if(!event.shouldCommit()) return;
+        event.set(service, true, 0, depth);
+        event.commit();
+    }
+
+    @Override
+    public void onConstructed(Service<?> service, long durationNanos, int depth) {
+        var event = new ServiceResolutionEvent();
+        if(!event.shouldCommit()) return;
+        event.set(service, false, durationNanos, depth);
+        event.commit();
+    }
+
+    @Override
+    public void onScopeCreated(ServiceScope scope) {
+        var event = new ScopeCreatedEvent();
+        if(!event.shouldCommit()) return;
+        event.scopeType = scope.getClass();
+        event.commit();
+    }
+
+    /**
+     * The event emitted when a service is resolved.
+     */
+    @Name("org.di4j.di4j.ServiceResolution")
+    @Label("Service Resolution")
+    @Category("DI4J")
+    @Description("A service was resolved by the container")
+    @StackTrace(false)
+    public static final class ServiceResolutionEvent extends Event {
+
+        @Label("Service Type")
+        Class<?> serviceType;
+
+        @Label("Lifetime")
+        String lifetime;
+
+        @Label("Cached")
+        @Description("True if an existing singleton, scoped or pooled instance was returned")
+        boolean cached;
+
+        @Label("Construction Time")
+        @Description("The time it took to create the instance, including its dependencies")
+        @Timespan(Timespan.NANOSECONDS)
+        long constructionTime;
+
+        @Label("Depth")
+        @Description("The number of services that were being created on the resolution path, 0 if the service was requested directly")
+        int depth;
+
+        private void set(Service<?> service, boolean cached, long constructionTime, int depth) {
+            var lifetime = service.getLifetime();
+            this.serviceType = service.getType();
+            this.lifetime = lifetime != null ? lifetime.name() : null;
+            this.cached = cached;
+            this.constructionTime = constructionTime;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The event emitted when the root service provider creates a scope.
+     */
+    @Name("org.di4j.di4j.ScopeCreated")
+    @Label("Scope Created")
+    @Category("DI4J")
+    @Description("The container created a service scope")
+    @StackTrace(false)
+    public static final class ScopeCreatedEvent extends Event {
+
+        @Label("Scope Type")
+        Class<?> scopeType;
+    }
+}
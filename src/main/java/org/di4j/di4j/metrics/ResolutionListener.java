@@ -0,0 +1,81 @@
+package org.di4j.di4j.metrics;
+
+import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.scope.ServiceScope;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The `ResolutionListener` interface is notified whenever a service is resolved.<br>
+ * A listener is installed with {@link org.di4j.di4j.ServiceCollectionBuilder#setResolutionListener(ResolutionListener)}, when no listener is installed
+ * the resolution path only checks a field for null. Several listeners are combined with {@link #of(ResolutionListener...)}.<br>
+ * Listeners are called on the resolving thread and should return quickly.<br>
+ */
+public interface ResolutionListener {
+
+    /**
+     * Called when a singleton, scoped or pooled service is resolved and an existing instance is returned.
+     *
+     * @param service the registration of the resolved service
+     */
+    default void onCacheHit(Service<?> service) {
+    }
+
+    /**
+     * Called when a singleton, scoped or pooled service is resolved and an existing instance is returned, see {@link #onCacheHit(Service)}.<br>
+     * This is the method the resolution path calls, listeners that need to know where the service was resolved override it instead.
+     *
+     * @param service the registration of the resolved service
+     * @param depth the number of services that were being created on the resolution path, 0 if the service was requested directly
+     */
+    default void onCacheHit(Service<?> service, int depth) {
+        onCacheHit(service);
+    }
+
+    /**
+     * Called when a new instance of a service has been created.
+     *
+     * @param service the registration of the created service
+     * @param durationNanos the time it took to create the instance in nanoseconds, including the time to resolve its dependencies
+     */
+    default void onConstructed(Service<?> service, long durationNanos) {
+    }
+
+    /**
+     * Called when a new instance of a service has been created, see {@link #onConstructed(Service, long)}.<br>
+     * This is the method the resolution path calls, listeners that need to know where the service was created override it instead.
+     *
+     * @param service the registration of the created service
+     * @param durationNanos the time it took to create the instance in nanoseconds, including the time to resolve its dependencies
+     * @param depth the number of services that were being created on the resolution path, 0 if the service was requested directly
+     */
+    default void onConstructed(Service<?> service, long durationNanos, int depth) {
+        onConstructed(service, durationNanos);
+    }
+
+    /**
+     * Called when the root service provider creates a new scope, including the scopes created for a {@link org.di4j.di4j.scope.ServiceScopePool}.
+     * Scopes that are reused by the pool are not reported again.
+     *
+     * @param scope the new scope
+     */
+    default void onScopeCreated(ServiceScope scope) {
+    }
+
+    /**
+     * Combines the given listeners into one listener that notifies each of them in order, for example to record
+     * {@link ResolutionMetrics} and {@link ResolutionEvents} at the same time.
+     *
+     * @param listeners the listeners to notify
+     * @return the combined listener, or the listener itself if only one is given
+     * @throws NullPointerException if a listener is null
+     */
+    static ResolutionListener of(ResolutionListener... listeners) {
+        var copy = Arrays.copyOf(listeners, listeners.length);
+        for (ResolutionListener listener : copy) {
+            Objects.requireNonNull(listener, "listener");
+        }
+        return copy.length == 1 ? copy[0] : new CompositeResolutionListener(copy);
+    }
+}
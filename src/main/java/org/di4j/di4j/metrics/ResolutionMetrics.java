@@ -0,0 +1,133 @@
+package org.di4j.di4j.metrics;
+
+import org.di4j.di4j.exceptions.DI4JException;
+import org.di4j.di4j.registry.Service;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The `ResolutionMetrics` class is a {@link ResolutionListener} that collects {@link ServiceMetrics} per service type.<br>
+ * The metrics can be exported to JMX, every service type is registered as an MXBean named
+ * {@code org.di4j.di4j:type=ServiceMetrics,name="<service type>"}.<br>
+ */
+public class ResolutionMetrics implements ResolutionListener {
+
+    /**
+     * The default JMX domain the metrics are exported to.
+     */
+    public static final String DEFAULT_DOMAIN = "org.di4j.di4j";
+
+    private final ConcurrentMap<Class<?>, ServiceMetrics> metrics = new ConcurrentHashMap<>();
+
+    private volatile MBeanServer server;
+    private volatile String domain;
+
+    @Override
+    public void onCacheHit(Service<?> service) {
+        getOrCreate(service.getType()).recordCacheHit();
+    }
+
+    @Override
+    public void onConstructed(Service<?> service, long durationNanos) {
+        getOrCreate(service.getType()).recordConstruction(durationNanos);
+    }
+
+    private ServiceMetrics getOrCreate(Class<?> type) {
+        var serviceMetrics = metrics.get(type);
+        if(serviceMetrics != null) return serviceMetrics;
+
+        serviceMetrics = new ServiceMetrics(type);
+        var existing = metrics.putIfAbsent(type, serviceMetrics);
+        if(existing != null) return existing;
+
+        var server = this.server;
+        if(server != null) register(server, domain, serviceMetrics);
+        return serviceMetrics;
+    }
+
+    /**
+     * Returns the metrics of the given service type.
+     *
+     * @param type the service type
+     * @return the metrics of the service type, or null if the service has not been resolved yet
+     */
+    public ServiceMetrics getMetrics(Class<?> type) {
+        return metrics.get(type);
+    }
+
+    /**
+     * Returns the metrics of every service type that has been resolved.
+     *
+     * @return the metrics of every resolved service type
+     */
+    public Collection<ServiceMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Exports the metrics to the platform MBean server under {@link #DEFAULT_DOMAIN}.
+     *
+     * @throws DI4JException if the metrics could not be registered
+     */
+    public void exportToJmx() {
+        exportToJmx(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    /**
+     * Exports the metrics to the given MBean server, metrics of service types resolved later are exported when they are first resolved.
+     *
+     * @param server the MBean server to register the metrics with
+     * @param domain the JMX domain to register the metrics under
+     * @throws DI4JException if the metrics could not be registered
+     */
+    public synchronized void exportToJmx(MBeanServer server, String domain) {
+        if(this.server != null) unexportFromJmx();
+        this.domain = domain;
+        this.server = server;
+        for (ServiceMetrics serviceMetrics : metrics.values()) {
+            register(server, domain, serviceMetrics);
+        }
+    }
+
+    /**
+     * Removes the exported metrics from JMX.
+     *
+     * @throws DI4JException if the metrics could not be unregistered
+     */
+    public synchronized void unexportFromJmx() {
+        var server = this.server;
+        if(server == null) return;
+        this.server = null;
+        for (ServiceMetrics serviceMetrics : metrics.values()) {
+            try {
+                var name = objectName(domain, serviceMetrics);
+                if(server.isRegistered(name)) server.unregisterMBean(name);
+            } catch (JMException e) {
+                throw new DI4JException("Could not unregister the metrics of " + serviceMetrics.getServiceType(), e);
+            }
+        }
+    }
+
+    private static void register(MBeanServer server, String domain, ServiceMetrics serviceMetrics) {
+        try {
+            var name = objectName(domain, serviceMetrics);
+            if(!server.isRegistered(name)) server.registerMBean(serviceMetrics, name);
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered concurrently while exporting
+        } catch (JMException e) {
+            throw new DI4JException("Could not register the metrics of " + serviceMetrics.getServiceType(), e);
+        }
+    }
+
+    private static ObjectName objectName(String domain, ServiceMetrics serviceMetrics) throws JMException {
+        return new ObjectName(domain + ":type=ServiceMetrics,name=" + ObjectName.quote(serviceMetrics.getServiceType()));
+    }
+}
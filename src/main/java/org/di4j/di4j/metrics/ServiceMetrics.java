@@ -0,0 +1,89 @@
+package org.di4j.di4j.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The `ServiceMetrics` class contains the resolution metrics of a single service type.<br>
+ * It is created and updated by {@link ResolutionMetrics}.<br>
+ */
+public class ServiceMetrics implements ServiceMetricsMXBean {
+
+    private final Class<?> type;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LatencyHistogram constructions = new LatencyHistogram();
+
+    /**
+     * Creates empty metrics for the given service type.
+     *
+     * @param type the service type
+     */
+    public ServiceMetrics(Class<?> type) {
+        this.type = type;
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordConstruction(long durationNanos) {
+        constructions.record(durationNanos);
+    }
+
+    /**
+     * Returns the service type the metrics are for.
+     *
+     * @return the service type
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the histogram of the time it took to create instances of the service.
+     *
+     * @return the construction time histogram
+     */
+    public LatencyHistogram getConstructionHistogram() {
+        return constructions;
+    }
+
+    @Override
+    public String getServiceType() {
+        return type.getName();
+    }
+
+    @Override
+    public long getResolutionCount() {
+        return getConstructionCount() + getCacheHitCount();
+    }
+
+    @Override
+    public long getConstructionCount() {
+        return constructions.getCount();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public double getMeanConstructionNanos() {
+        return constructions.getMean();
+    }
+
+    @Override
+    public long getConstructionNanosP50() {
+        return constructions.getPercentile(50);
+    }
+
+    @Override
+    public long getConstructionNanosP99() {
+        return constructions.getPercentile(99);
+    }
+
+    @Override
+    public long getMaxConstructionNanos() {
+        return constructions.getMax();
+    }
+}
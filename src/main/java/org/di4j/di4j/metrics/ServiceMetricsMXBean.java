@@ -0,0 +1,47 @@
+package org.di4j.di4j.metrics;
+
+/**
+ * The management interface of {@link ServiceMetrics}, exported to JMX by {@link ResolutionMetrics#exportToJmx()}.
+ */
+public interface ServiceMetricsMXBean {
+
+    /**
+     * @return the name of the service type
+     */
+    String getServiceType();
+
+    /**
+     * @return the number of times the service was resolved, this is the sum of the constructions and cache hits
+     */
+    long getResolutionCount();
+
+    /**
+     * @return the number of instances of the service that were created
+     */
+    long getConstructionCount();
+
+    /**
+     * @return the number of times an existing singleton or scoped instance was returned
+     */
+    long getCacheHitCount();
+
+    /**
+     * @return the mean time to create an instance in nanoseconds
+     */
+    double getMeanConstructionNanos();
+
+    /**
+     * @return the median time to create an instance in nanoseconds, as the upper bound of its histogram bucket
+     */
+    long getConstructionNanosP50();
+
+    /**
+     * @return the 99th percentile of the time to create an instance in nanoseconds, as the upper bound of its histogram bucket
+     */
+    long getConstructionNanosP99();
+
+    /**
+     * @return the longest time to create an instance in nanoseconds
+     */
+    long getMaxConstructionNanos();
+}
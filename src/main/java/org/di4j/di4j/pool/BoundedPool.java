@@ -0,0 +1,81 @@
+package org.di4j.di4j.pool;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The `BoundedPool` class is a lock-free pool that keeps at most a fixed number of objects.<br>
+ * Objects are kept in an array of slots that are claimed with compare-and-set, so acquiring and releasing does not allocate.<br>
+ * Threads start probing at a random slot so they rarely contend for the same slot.<br>
+ *
+ * @param <T> the type of the pooled objects
+ */
+public class BoundedPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * Creates an empty pool that keeps at most the given number of objects.
+     *
+     * @param capacity the maximum number of pooled objects
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public BoundedPool(int capacity) {
+        if(capacity <= 0) throw new IllegalArgumentException("The capacity of a pool must be positive");
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Takes an object out of the pool.
+     *
+     * @return a pooled object, or null if the pool is empty
+     */
+    public T acquire() {
+        int length = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            T item = slots.get(index);
+            if(item != null && slots.compareAndSet(index, item, null)) return item;
+        }
+        return null;
+    }
+
+    /**
+     * Puts an object back into the pool.
+     *
+     * @param item the object to pool
+     * @return true if the object was pooled, false if the pool is full and the object should be discarded
+     */
+    public boolean release(T item) {
+        int length = slots.length();
+        int start = ThreadLocalRandom.current().nextInt(length);
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % length;
+            if(slots.get(index) == null && slots.compareAndSet(index, null, item)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the given object is in the pool. The slots are compared by identity.
+     *
+     * @param item the object to look for
+     * @return true if the object is pooled
+     */
+    public boolean contains(T item) {
+        for (int i = 0; i < slots.length(); i++) {
+            if(slots.get(i) == item) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the maximum number of objects the pool keeps.
+     *
+     * @return the capacity of the pool
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+}
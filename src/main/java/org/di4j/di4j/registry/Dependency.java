@@ -0,0 +1,270 @@
+package org.di4j.di4j.registry;
+
+import org.di4j.di4j.Lazy;
+import org.di4j.di4j.Provider;
+import org.di4j.di4j.ServiceProvider;
+import org.di4j.di4j.exceptions.MissingServiceException;
+
+import java.lang.reflect.Type;
+import java.util.Optional;
+
+/**
+ * The `Dependency` class describes how a single constructor parameter of a service is resolved.<br>
+ * It is created when the constructor is inspected and linked to the registration of the parameter when the registry is created,
+ * so resolving the parameter only has to follow the kind of the dependency.<br>
+ */
+final class Dependency {
+
+    /**
+     * The kind of value injected into the parameter.
+     */
+    enum Kind {
+        /**
+         * The instance of the service is injected.
+         */
+        INSTANCE,
+        /**
+         * A {@link Lazy} that resolves the service on first use is injected.
+         */
+        LAZY,
+        /**
+         * A {@link Provider} that resolves the service on every call is injected.
+         */
+        PROVIDER,
+        /**
+         * A {@code List} of every registration of the service is injected, see {@link MultiBinding}.
+         */
+        LIST,
+        /**
+         * A {@code Set} of every registration of the service is injected, see {@link MultiBinding}.
+         */
+        SET,
+        /**
+         * An array of every registration of the service is injected, see {@link MultiBinding}.
+         */
+        ARRAY,
+        /**
+         * An {@link Optional} of the service is injected, empty if the service is not registered.<br>
+         * Whether the service is registered is decided when the dependency is linked, so a missing service costs nothing when it is resolved.
+         */
+        OPTIONAL
+    }
+
+    private final Kind kind;
+    private final Class<?> type;
+    private final Type genericType;
+    private final Object key;
+    private final Service<?> service;
+    private final MultiBinding<?> binding;
+    private final boolean linked;
+
+    private Dependency(Kind kind, Class<?> type, Type genericType, Object key, Service<?> service, MultiBinding<?> binding, boolean linked) {
+        this.kind = kind;
+        this.type = type;
+        this.genericType = genericType;
+        this.key = key;
+        this.service = service;
+        this.binding = binding;
+        this.linked = linked;
+    }
+
+    /**
+     * Creates a dependency that is not linked yet, it is resolved by looking up its type in the service provider.
+     *
+     * @param kind the kind of value injected into the parameter
+     * @param type the type of the service the parameter depends on
+     * @return the dependency
+     */
+    static Dependency unlinked(Kind kind, Class<?> type) {
+        return unlinked(kind, type, null, null);
+    }
+
+    /**
+     * Creates a dependency on a generic or keyed service that is not linked yet, see {@link #unlinked(Kind, Class)}.
+     *
+     * @param kind the kind of value injected into the parameter
+     * @param type the type of the service the parameter depends on
+     * @param genericType the closed generic type of the service, or null if the parameter depends on a plain class
+     * @param key the key of the service, or null if the service is not keyed
+     * @return the dependency
+     */
+    static Dependency unlinked(Kind kind, Class<?> type, Type genericType, Object key) {
+        return new Dependency(kind, type, genericType, key, null, null, false);
+    }
+
+    /**
+     * Links the dependency to the registration of its type in the given registry.<br>
+     * A dependency on a generic type is linked to the registration of the closed type, closing an open generic registration if needed.
+     * If the closed type is not registered it falls back to the registration of the raw class.
+     * A keyed dependency is linked as described in {@link ServiceRegistry#getInjectedKeyedRegistration(Type, Object)}.
+     *
+     * @param registry the registry to link the dependency against
+     * @return the linked dependency
+     */
+    Dependency link(ServiceRegistry registry) {
+        if(isMulti()) {
+            var linkedBinding = genericType != null ? registry.getMultiBinding(genericType) : null;
+            if(linkedBinding == null || linkedBinding.services().length == 0) linkedBinding = registry.getMultiBinding(type);
+            return new Dependency(kind, type, genericType, null, null, linkedBinding, true);
+        }
+        var linkedService = key != null ? registry.getInjectedKeyedRegistration(genericType != null ? genericType : type, key) : genericType != null ? registry.getRegistration(genericType) : null;
+        if(linkedService == null) linkedService = key != null ? registry.getInjectedKeyedRegistration(type, key) : registry.getRegistration(type);
+        return new Dependency(kind, type, genericType, key, linkedService, null, true);
+    }
+
+    /**
+     * Returns the type of the service the parameter depends on.
+     *
+     * @return the type of the service
+     */
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the closed generic type of the service the parameter depends on.
+     *
+     * @return the generic type, or null if the parameter depends on a plain class
+     */
+    Type getGenericType() {
+        return genericType;
+    }
+
+    /**
+     * Describes the service the parameter depends on for error messages.
+     *
+     * @return the name of the type, with the key if the service is keyed
+     */
+    String describe() {
+        var name = genericType != null ? genericType.getTypeName() : type.getName();
+        return key != null ? name + " with the key " + key : name;
+    }
+
+    /**
+     * Returns the registration the dependency was linked to.
+     *
+     * @return the registration, or null if the dependency is not linked or the type is not registered
+     */
+    Service<?> getService() {
+        return service;
+    }
+
+    /**
+     * Returns the multi-binding a {@code List}, {@code Set} or array dependency was linked to.
+     *
+     * @return the multi-binding, or null if the dependency is not linked or not a multi-binding
+     */
+    MultiBinding<?> getBinding() {
+        return binding;
+    }
+
+    /**
+     * Checks whether the service is only resolved after the dependent service was created.<br>
+     * Deferred dependencies do not have to be loaded before the service and do not take part in the load order.
+     *
+     * @return true if the dependency is a {@link Lazy} or a {@link Provider}, false otherwise
+     */
+    boolean isDeferred() {
+        return kind == Kind.LAZY || kind == Kind.PROVIDER;
+    }
+
+    /**
+     * Checks whether every registration of the service is injected as a collection.
+     *
+     * @return true if the dependency is a {@code List}, {@code Set} or array, false otherwise
+     */
+    boolean isMulti() {
+        return kind == Kind.LIST || kind == Kind.SET || kind == Kind.ARRAY;
+    }
+
+    /**
+     * Resolves the value injected into the parameter.
+     *
+     * @param provider the service provider that creates the dependent service
+     * @param context the class the value is injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return the value to inject, or null if the service is missing, multi-bindings and optional services are never missing
+     */
+    Object resolve(ServiceProvider provider, Class<?> context, int depth) {
+        if(linked && service == null && binding == null) return kind == Kind.OPTIONAL ? Optional.empty() : null;
+        return switch (kind) {
+            case INSTANCE -> service != null ? provider.resolve(service, context, depth) : lookUp(provider, context);
+            case LAZY -> new LazyDependency<>(this, provider, context);
+            case PROVIDER -> new ProviderDependency<>(this, provider, context);
+            case LIST -> binding != null ? binding.resolveList(provider, context, depth) : provider.getServices(type);
+            case SET -> binding != null ? binding.resolveSet(provider, context, depth) : MultiBinding.fromList(kind, type, provider.getServices(type));
+            case ARRAY -> binding != null ? binding.resolveArray(provider, context, depth) : MultiBinding.fromList(kind, type, provider.getServices(type));
+            case OPTIONAL -> Optional.ofNullable(service != null ? provider.resolve(service, context, depth) : lookUp(provider, context));
+        };
+    }
+
+    private Object lookUp(ServiceProvider provider, Class<?> context) {
+        if(key != null) return provider.getKeyedService(type, key);
+        return genericType != null ? provider.getService(genericType, context) : provider.getService(type, context);
+    }
+
+    private Object getRequired(ServiceProvider provider, Class<?> context) {
+        var instance = service != null ? provider.resolve(service, context) : linked ? null : lookUp(provider, context);
+        if(instance == null) throw new MissingServiceException("The service " + context.getName() + " could not get a instance of the service " + describe());
+        return instance;
+    }
+
+    private static final class LazyDependency<T> implements Lazy<T> {
+
+        private final Dependency dependency;
+        private final ServiceProvider provider;
+        private final Class<?> context;
+        private volatile T instance;
+
+        private LazyDependency(Dependency dependency, ServiceProvider provider, Class<?> context) {
+            this.dependency = dependency;
+            this.provider = provider;
+            this.context = context;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get() {
+            T value = instance;
+            if(value != null) return value;
+
+            synchronized (this) {
+                value = instance;
+                if(value == null) {
+                    value = (T) dependency.getRequired(provider, context);
+                    instance = value;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "Lazy<" + dependency.describe() + ">";
+        }
+    }
+
+    private static final class ProviderDependency<T> implements Provider<T> {
+
+        private final Dependency dependency;
+        private final ServiceProvider provider;
+        private final Class<?> context;
+
+        private ProviderDependency(Dependency dependency, ServiceProvider provider, Class<?> context) {
+            this.dependency = dependency;
+            this.provider = provider;
+            this.context = context;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get() {
+            return (T) dependency.getRequired(provider, context);
+        }
+
+        @Override
+        public String toString() {
+            return "Provider<" + dependency.describe() + ">";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.di4j.di4j.registry;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The `GenericTypes` class turns the {@link Type}s services are registered and injected as into canonical lookup keys.<br>
+ * A closed parameterized type such as {@code Repository<User>} is copied into a key that caches its hash code, so looking it up
+ * hashes the type arguments only once. Keys are equal to (and hash like) the parameterized types of the JDK, so a key and a type
+ * read by reflection find the same registration. Plain classes are their own key and keep the faster lookup by class.<br>
+ */
+public final class GenericTypes {
+
+    private GenericTypes() {
+    }
+
+    /**
+     * Returns the canonical lookup key of the given type.
+     *
+     * @param type the type to canonicalize
+     * @return the class itself, or a parameterized type with a cached hash code
+     * @throws IllegalArgumentException if the type is not closed, that is it contains a type variable or a wildcard
+     */
+    public static Type canonicalize(Type type) {
+        if(type instanceof Class<?>) return type;
+        if(type instanceof Key) return type;
+        if(!isClosed(type)) throw new IllegalArgumentException("The type " + type.getTypeName() + " is not closed, services can only be registered and resolved as closed types");
+        return copy(type);
+    }
+
+    /**
+     * Returns the canonical lookup key of the given type, if it can be used as one.
+     *
+     * @param type the type to canonicalize
+     * @return the canonical type, or null if the type contains a type variable or a wildcard
+     */
+    static Type canonicalizeOrNull(Type type) {
+        return isClosed(type) ? canonicalize(type) : null;
+    }
+
+    /**
+     * Returns the class of the given type, erasing its type arguments.
+     *
+     * @param type the type to erase
+     * @return the raw class of the type
+     * @throws IllegalArgumentException if the type has no single raw class, that is it is a type variable or a wildcard
+     */
+    public static Class<?> getRawType(Type type) {
+        if(type instanceof Class<?> clazz) return clazz;
+        if(type instanceof ParameterizedType parameterized) return (Class<?>) parameterized.getRawType();
+        if(type instanceof GenericArrayType array) return getRawType(array.getGenericComponentType()).arrayType();
+        throw new IllegalArgumentException("The type " + type.getTypeName() + " does not have a raw class");
+    }
+
+    /**
+     * Checks whether the given type can be instantiated as it is, that is it does not contain type variables or wildcards.
+     *
+     * @param type the type to check
+     * @return true if the type is closed, false otherwise
+     */
+    static boolean isClosed(Type type) {
+        if(type instanceof Class<?>) return true;
+        if(type instanceof GenericArrayType array) return isClosed(array.getGenericComponentType());
+        if(!(type instanceof ParameterizedType parameterized)) return false;
+        if(parameterized.getOwnerType() != null && !isClosed(parameterized.getOwnerType())) return false;
+        for (Type argument : parameterized.getActualTypeArguments()) {
+            if(!isClosed(argument)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the type variables in the given type with the types they are bound to.
+     *
+     * @param type the type to substitute
+     * @param bindings the types the type variables are bound to
+     * @return the substituted type, canonical if it is closed
+     */
+    static Type substitute(Type type, Map<TypeVariable<?>, Type> bindings) {
+        if(type instanceof TypeVariable<?> variable) {
+            var bound = bindings.get(variable);
+            return bound != null ? bound : variable;
+        }
+        if(type instanceof ParameterizedType parameterized) {
+            var arguments = parameterized.getActualTypeArguments().clone();
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = substitute(arguments[i], bindings);
+            }
+            var owner = parameterized.getOwnerType() != null ? substitute(parameterized.getOwnerType(), bindings) : null;
+            return new Key((Class<?>) parameterized.getRawType(), owner, arguments);
+        }
+        return type;
+    }
+
+    /**
+     * Creates the parameterized type of the given class with the given type arguments.
+     *
+     * @param raw the generic class
+     * @param arguments the type arguments, one per type parameter of the class
+     * @return the parameterized type
+     */
+    static ParameterizedType parameterize(Class<?> raw, Type... arguments) {
+        return new Key(raw, raw.getDeclaringClass(), arguments);
+    }
+
+    private static Type copy(Type type) {
+        if(type instanceof Class<?> || type instanceof Key) return type;
+        if(type instanceof GenericArrayType) return getRawType(type);
+        var parameterized = (ParameterizedType) type;
+        var arguments = parameterized.getActualTypeArguments().clone();
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = copy(arguments[i]);
+        }
+        var owner = parameterized.getOwnerType() != null ? copy(parameterized.getOwnerType()) : null;
+        return new Key((Class<?>) parameterized.getRawType(), owner, arguments);
+    }
+
+    /**
+     * A parameterized type that caches its hash code. Equality and hash code follow the contract of {@link ParameterizedType}
+     * used by the JDK, so keys can be compared with the types returned by reflection.
+     */
+    private static final class Key implements ParameterizedType {
+
+        private final Class<?> raw;
+        private final Type owner;
+        private final Type[] arguments;
+        private final int hash;
+
+        private Key(Class<?> raw, Type owner, Type[] arguments) {
+            this.raw = raw;
+            this.owner = owner;
+            this.arguments = arguments;
+            this.hash = Arrays.hashCode(arguments) ^ Objects.hashCode(owner) ^ raw.hashCode();
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return arguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return raw;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return owner;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj) return true;
+            if(obj instanceof Key key) return hash == key.hash && raw == key.raw && Objects.equals(owner, key.owner) && Arrays.equals(arguments, key.arguments);
+            return obj instanceof ParameterizedType other && raw.equals(other.getRawType())
+                    && Objects.equals(owner, other.getOwnerType()) && Arrays.equals(arguments, other.getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return getTypeName();
+        }
+
+        @Override
+        public String getTypeName() {
+            var name = new StringBuilder(raw.getTypeName()).append('<');
+            for (int i = 0; i < arguments.length; i++) {
+                if(i > 0) name.append(", ");
+                name.append(arguments[i].getTypeName());
+            }
+            return name.append('>').toString();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.di4j.di4j.registry;
+
+import org.di4j.di4j.ServiceProvider;
+import org.di4j.di4j.exceptions.CircularDependencyException;
+import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
+import org.di4j.di4j.exceptions.MissingServiceException;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The `MultiBinding` class holds every registration of a service type, in the order the services were registered.<br>
+ * It is created once per type when the registry is created, so resolving all implementations of a type only visits the
+ * registrations of that type instead of the whole registry. {@code List<T>}, {@code Set<T>} and {@code T[]} constructor parameters
+ * are linked to the multi-binding of {@code T}.<br>
+ * If every registration is a singleton the instances are resolved once and the returned list and set are shared, immutable
+ * views of the same array. Otherwise the instances are resolved again for every request, so scoped and transient services
+ * keep their lifetime.<br>
+ *
+ * @param <T> the type of the services
+ */
+public final class MultiBinding<T> {
+
+    private final Class<T> type;
+    private final Service<?>[] services;
+    private final boolean shared;
+
+    private volatile Object[] sharedInstances;
+    private volatile List<T> sharedList;
+    private volatile Set<T> sharedSet;
+
+    /**
+     * Creates a new multi-binding of the given registrations.
+     *
+     * @param type the type the services are registered as
+     * @param services the registrations of the type, in registration order
+     */
+    MultiBinding(Class<T> type, Service<?>[] services) {
+        this.type = type;
+        this.services = services;
+        this.shared = Arrays.stream(services).allMatch(x -> x.getLifetime() == ServiceLifetime.SINGLETON);
+    }
+
+    /**
+     * Returns the type the services are registered as.
+     *
+     * @return the type of the services
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Returns every registration of the type, in registration order.
+     *
+     * @return the registrations, empty if the type is not registered
+     */
+    @SuppressWarnings("unchecked")
+    public List<Service<? extends T>> getRegistrations() {
+        return (List<Service<? extends T>>) (List<?>) List.of(services);
+    }
+
+    Service<?>[] services() {
+        return services;
+    }
+
+    /**
+     * Checks whether the instances are resolved once and shared, which is the case if every registration is a singleton.
+     *
+     * @return true if the resolved collections are shared, false if they are resolved for every request
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Resolves every service of the type into an immutable list, in registration order.
+     *
+     * @param provider the service provider to resolve the services with
+     * @param context the class the services are injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return the instances of the services, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws MissingServiceException if a dependency of a service is not registered
+     * @throws CircularDependencyException if a service depends on itself
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> resolveList(ServiceProvider provider, Class<?> context, int depth) {
+        if(!shared) return (List<T>) Collections.unmodifiableList(Arrays.asList(resolve(provider, context, depth)));
+
+        var list = sharedList;
+        if(list == null) {
+            list = (List<T>) Collections.unmodifiableList(Arrays.asList(getSharedInstances(provider, context, depth)));
+            sharedList = list;
+        }
+        return list;
+    }
+
+    /**
+     * Resolves every service of the type into an immutable set that keeps the registration order.
+     *
+     * @param provider the service provider to resolve the services with
+     * @param context the class the services are injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return the distinct instances of the services, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws MissingServiceException if a dependency of a service is not registered
+     * @throws CircularDependencyException if a service depends on itself
+     */
+    @SuppressWarnings("unchecked")
+    public Set<T> resolveSet(ServiceProvider provider, Class<?> context, int depth) {
+        if(!shared) return (Set<T>) Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(resolve(provider, context, depth))));
+
+        var set = sharedSet;
+        if(set == null) {
+            set = (Set<T>) Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(getSharedInstances(provider, context, depth))));
+            sharedSet = set;
+        }
+        return set;
+    }
+
+    /**
+     * Resolves every service of the type into a new array, in registration order.<br>
+     * Arrays can be modified by the caller, so a new array is returned even if the instances are shared.
+     *
+     * @param provider the service provider to resolve the services with
+     * @param context the class the services are injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return the instances of the services, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws MissingServiceException if a dependency of a service is not registered
+     * @throws CircularDependencyException if a service depends on itself
+     */
+    @SuppressWarnings("unchecked")
+    public T[] resolveArray(ServiceProvider provider, Class<?> context, int depth) {
+        var instances = shared ? getSharedInstances(provider, context, depth) : resolve(provider, context, depth);
+        var array = (T[]) Array.newInstance(type, instances.length);
+        System.arraycopy(instances, 0, array, 0, instances.length);
+        return array;
+    }
+
+    private Object[] getSharedInstances(ServiceProvider provider, Class<?> context, int depth) {
+        // Singletons are created once, so threads racing here resolve the same instances
+        var instances = sharedInstances;
+        if(instances == null) {
+            instances = resolve(provider, context, depth);
+            sharedInstances = instances;
+        }
+        return instances;
+    }
+
+    private Object[] resolve(ServiceProvider provider, Class<?> context, int depth) {
+        var instances = new Object[services.length];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = provider.resolve(services[i], context, depth);
+        }
+        return instances;
+    }
+
+    /**
+     * Converts the services resolved by a provider into the collection of the given kind, used for dependencies that are not linked.
+     */
+    static Object fromList(Dependency.Kind kind, Class<?> type, List<?> instances) {
+        return switch (kind) {
+            case SET -> Collections.unmodifiableSet(new LinkedHashSet<>(instances));
+            case ARRAY -> instances.toArray((Object[]) Array.newInstance(type, instances.size()));
+            default -> instances;
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package org.di4j.di4j.registry;
+
+import org.di4j.di4j.exceptions.ClassNotAssignableException;
+import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The `OpenGenericService` class is the registration of a generic service for every type argument, for example
+ * {@code Repository<T>} implemented by {@code JdbcRepository<T>}.<br>
+ * It is not a service itself: when a closed type such as {@code Repository<User>} is requested for the first time, the registry
+ * closes the registration into a {@link Service} for {@code JdbcRepository<User>} and keeps it, so every closed type is planned once.<br>
+ */
+public final class OpenGenericService {
+
+    private final Class<?> type;
+    private final Class<?> implementation;
+    private final ServiceLifetime lifetime;
+    private final ParameterizedType implementedType;
+
+    /**
+     * Creates a new open generic registration.
+     *
+     * @param type the generic class the service is requested as
+     * @param implementation the generic class that implements the service, or the type itself
+     * @param lifetime the lifetime of the closed services
+     * @throws InvalidServiceRegistrationException if the type is not generic, the lifetime is injection-only or the implementation does
+     * not pass its type parameters on to the type
+     * @throws ClassNotAssignableException if the implementation is not assignable to the type
+     */
+    public OpenGenericService(Class<?> type, Class<?> implementation, ServiceLifetime lifetime) {
+        if(type.getTypeParameters().length == 0) throw new InvalidServiceRegistrationException("The class " + type.getName() + " is not generic and cannot be registered as an open generic service");
+        if(lifetime == null || lifetime == ServiceLifetime.INJECTION_ONLY || lifetime == ServiceLifetime.POOLED) throw new InvalidServiceRegistrationException("The open generic service " + type.getName() + " must be a singleton, scoped or transient service");
+        if(!type.isAssignableFrom(implementation)) throw new ClassNotAssignableException("The class " + implementation.getName() + " is not assignable to " + type.getName());
+        this.type = type;
+        this.implementation = implementation;
+        this.lifetime = lifetime;
+        this.implementedType = findSupertype(implementation, type);
+        if(implementedType == null) throw new InvalidServiceRegistrationException("The class " + implementation.getName() + " does not implement " + type.getName() + " with type arguments");
+    }
+
+    /**
+     * Returns the generic class the service is requested as.
+     *
+     * @return the generic class of the service
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the generic class that implements the service.
+     *
+     * @return the implementation class
+     */
+    public Class<?> getImplementationType() {
+        return implementation;
+    }
+
+    /**
+     * Returns the lifetime of the closed services.
+     *
+     * @return the lifetime
+     */
+    public ServiceLifetime getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * Closes the registration for the given type by matching the type arguments the implementation passes on to the service
+     * against the requested ones.
+     *
+     * @param requested the requested closed type, its raw class is the type of this registration
+     * @return the service for the closed type, or null if the implementation cannot be closed for the requested type arguments
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Service<?> close(ParameterizedType requested) {
+        var bindings = new HashMap<TypeVariable<?>, Type>();
+        var pattern = implementedType.getActualTypeArguments();
+        var arguments = requested.getActualTypeArguments();
+        for (int i = 0; i < pattern.length; i++) {
+            if(!unify(pattern[i], arguments[i], bindings)) return null;
+        }
+        for (TypeVariable<?> parameter : implementation.getTypeParameters()) {
+            if(!bindings.containsKey(parameter)) return null;
+        }
+
+        var service = new Service(type, implementation == type ? null : implementation, requested, bindings);
+        switch (lifetime) {
+            case SINGLETON -> service.setSingleton(true);
+            case SCOPED -> service.setScoped(true);
+            default -> service.setTransient(true);
+        }
+        return service;
+    }
+
+    private static boolean unify(Type pattern, Type actual, Map<TypeVariable<?>, Type> bindings) {
+        if(pattern instanceof TypeVariable<?> variable) {
+            var bound = bindings.putIfAbsent(variable, actual);
+            return bound == null || bound.equals(actual);
+        }
+        if(pattern instanceof ParameterizedType parameterized) {
+            if(!(actual instanceof ParameterizedType other) || parameterized.getRawType() != other.getRawType()) return false;
+            var patternArguments = parameterized.getActualTypeArguments();
+            var actualArguments = other.getActualTypeArguments();
+            for (int i = 0; i < patternArguments.length; i++) {
+                if(!unify(patternArguments[i], actualArguments[i], bindings)) return false;
+            }
+            return true;
+        }
+        return pattern.equals(actual);
+    }
+
+    /**
+     * Finds the type the given class passes on to the target class, expressed in the type parameters of the class.<br>
+     * For example {@code class JdbcRepository<E> implements Repository<E>} passes {@code Repository<E>} on to {@code Repository}.
+     *
+     * @return the parameterized target type, or null if the class extends the target as a raw type
+     */
+    private static ParameterizedType findSupertype(Class<?> clazz, Class<?> target) {
+        if(clazz == target) return GenericTypes.parameterize(target, target.getTypeParameters());
+
+        var supertypes = new Type[clazz.getGenericInterfaces().length + 1];
+        System.arraycopy(clazz.getGenericInterfaces(), 0, supertypes, 0, supertypes.length - 1);
+        supertypes[supertypes.length - 1] = clazz.getGenericSuperclass();
+        for (Type supertype : supertypes) {
+            if(supertype == null) continue;
+            var raw = GenericTypes.getRawType(supertype);
+            if(!target.isAssignableFrom(raw)) continue;
+            if(!(supertype instanceof ParameterizedType parameterized)) return raw == target ? null : findSupertype(raw, target);
+
+            var found = findSupertype(raw, target);
+            if(found == null) return null;
+            var bindings = new HashMap<TypeVariable<?>, Type>();
+            var parameters = raw.getTypeParameters();
+            var arguments = parameterized.getActualTypeArguments();
+            for (int i = 0; i < parameters.length; i++) {
+                bindings.put(parameters[i], arguments[i]);
+            }
+            return (ParameterizedType) GenericTypes.substitute(found, bindings);
+        }
+        return null;
+    }
+}
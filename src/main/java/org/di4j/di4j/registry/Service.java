@@ -1,17 +1,42 @@
 package org.di4j.di4j.registry;
 
+import org.di4j.di4j.Lazy;
+import org.di4j.di4j.Provider;
 import org.di4j.di4j.ServiceProvider;
+import org.di4j.di4j.annotations.ServiceKey;
 import org.di4j.di4j.annotations.ServiceProviderConstructor;
+import org.di4j.di4j.exceptions.CircularDependencyException;
 import org.di4j.di4j.exceptions.ClassNotAssignableException;
+import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
 import org.di4j.di4j.exceptions.InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException;
 import org.di4j.di4j.exceptions.InvalidConstructorCountException;
+import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
 import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.ResolutionException;
+import org.di4j.di4j.metrics.ResolutionListener;
+import org.di4j.di4j.pool.BoundedPool;
 
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -21,20 +46,50 @@ import java.util.function.Function;
  */
 public class Service<T> {
 
-    private Constructor<? extends Object> constructor;
+    private Class<?>[] constructorParameterTypes;
+    private String[] parameterKeys;
+    private Dependency[] parameters;
+    // Written after the parameters when a stale snapshot is replaced, so a thread that reads it sees the matching parameters
+    private volatile Instantiator instantiator;
+    private ServiceFactory<?> generatedFactory;
     private boolean isSingleton;
     private boolean isTransient;
     private boolean isScoped;
     private boolean isInjectionOnly;
+    private boolean isPooled;
+    private ServiceLifetime lifetime;
+    private int id = -1;
+    private Object key;
 
     private Class<T> clazz;
     private Class<? extends T> implementationClazz;
+    private Type serviceType;
 
-    private T singletonObject;
+    private volatile T singletonObject;
+    private BoundedPool<T> pool;
+    private Consumer<? super T> reset;
 
     private Function<ServiceProvider, ? extends T> factory;
     private BiFunction<ServiceProvider, Class<?>, ? extends T> injectionOnlyFactory;
 
+    private Class<?>[] declaredDependencies;
+    private ResolutionListener listener;
+    private Service<?>[] dependencies;
+
+    // The thread that is creating an instance of the service, a thread that finds its own mark is resolving the service in a cycle
+    private volatile Thread constructing;
+    // The services a thread is creating while another thread holds their mark, only used while the same service is created concurrently
+    private static final ThreadLocal<Set<Service<?>>> contended = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+    private static final VarHandle CONSTRUCTING;
+
+    static {
+        try {
+            CONSTRUCTING = MethodHandles.lookup().findVarHandle(Service.class, "constructing", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * Creates a new service with the given class.<br>
      * The service will be created using the class's constructor.<br>
@@ -57,6 +112,7 @@ public class Service<T> {
         this.clazz = clazz;
         this.singletonObject = singletonObject;
         this.isSingleton = true;
+        this.lifetime = computeLifetime();
     }
 
     /**
@@ -82,6 +138,7 @@ public class Service<T> {
         this.clazz = clazz;
         this.injectionOnlyFactory = factory;
         isInjectionOnly = true;
+        this.lifetime = computeLifetime();
     }
 
     /**
@@ -97,8 +154,104 @@ public class Service<T> {
         extractConstructor(implementation);
     }
 
+    /**
+     * Creates a new service with a constructor or generated factory that was chosen before, see {@link ServiceGraphSnapshot}.<br>
+     * The constructor is only looked up when the service is first created, so building the registry does not have to link the class.<br>
+     *
+     * @param clazz the class of the service
+     * @param implementation the implementation class of the service, or null if the service class is created
+     * @param parameterTypes the parameter types of the constructor to create the service with, or null if the generated factory is used
+     * @param parameterKeys the {@link ServiceKey} of every constructor parameter, or null if no parameter has a key
+     * @param generatedFactory the generated factory to create the service with, or null if the constructor is used
+     */
+    Service(Class<T> clazz, Class<? extends T> implementation, Class<?>[] parameterTypes, String[] parameterKeys, ServiceFactory<?> generatedFactory) {
+        this.clazz = clazz;
+        this.implementationClazz = implementation;
+        var target = implementation != null ? implementation : clazz;
+        if(generatedFactory != null) {
+            useGeneratedFactory(target, generatedFactory);
+        } else {
+            constructorParameterTypes = parameterTypes;
+            this.parameterKeys = parameterKeys;
+            parameters = createParameters(target, parameterTypes, null, parameterKeys, null);
+        }
+    }
+
+    /**
+     * Creates the service of an {@link OpenGenericService} that was closed for the given type.<br>
+     * The type variables of the implementation are bound to the requested type arguments, so generic constructor parameters
+     * such as {@code Mapper<T>} depend on the closed type, for example {@code Mapper<User>}.<br>
+     *
+     * @param clazz the generic class of the service
+     * @param implementation the generic implementation class of the service, or null if the service class is created
+     * @param serviceType the closed type the service is registered as
+     * @param typeArguments the types the type variables of the implementation are bound to
+     */
+    Service(Class<T> clazz, Class<? extends T> implementation, Type serviceType, Map<TypeVariable<?>, Type> typeArguments) {
+        this.clazz = clazz;
+        this.implementationClazz = implementation;
+        this.serviceType = serviceType;
+        var target = implementation != null ? implementation : clazz;
+        var constructor = findConstructor(target);
+        constructorParameterTypes = constructor.getParameterTypes();
+        parameterKeys = getParameterKeys(constructor);
+        parameters = createParameters(target, constructorParameterTypes, constructor, parameterKeys, typeArguments);
+        instantiator = getInstantiator(constructor);
+    }
+
+    /**
+     * Creates an unlinked copy of the given service that keeps its plan but not its singleton instance.<br>
+     * Used by overlay registries (see {@link ServiceRegistry#overlay(List, List)}) to re-create the services that depend on an overridden one.
+     *
+     * @param service the service to copy
+     */
+    private Service(Service<T> service) {
+        this.clazz = service.clazz;
+        this.implementationClazz = service.implementationClazz;
+        this.serviceType = service.serviceType;
+        this.constructorParameterTypes = service.constructorParameterTypes;
+        this.parameterKeys = service.parameterKeys;
+        this.parameters = service.parameters;
+        this.instantiator = service.instantiator;
+        this.generatedFactory = service.generatedFactory;
+        this.factory = service.factory;
+        this.injectionOnlyFactory = service.injectionOnlyFactory;
+        this.declaredDependencies = service.declaredDependencies;
+        this.key = service.key;
+        this.listener = service.listener;
+        this.isSingleton = service.isSingleton;
+        this.isTransient = service.isTransient;
+        this.isScoped = service.isScoped;
+        this.isInjectionOnly = service.isInjectionOnly;
+        this.isPooled = service.isPooled;
+        this.lifetime = service.lifetime;
+        // The pooled instances were created with the dependencies of the original service
+        if(service.pool != null) this.pool = new BoundedPool<>(service.pool.getCapacity());
+        this.reset = service.reset;
+        // Singletons registered as an instance have nothing to re-create
+        if(factory == null && injectionOnlyFactory == null && !hasConstructor()) this.singletonObject = service.singletonObject;
+    }
+
+    /**
+     * Returns an unlinked copy of the service with the same plan and without its singleton instance.
+     *
+     * @return the copy
+     */
+    Service<T> copy() {
+        return new Service<>(this);
+    }
+
+    // Caches the generated factory of every class, so each class is only looked up once
+    private static final ClassValue<Optional<ServiceFactory<?>>> generatedFactories = new ClassValue<>() {
+        @Override
+        protected Optional<ServiceFactory<?>> computeValue(Class<?> type) {
+            return Optional.ofNullable(loadGeneratedFactory(type));
+        }
+    };
+
     /**
      * Extracts the constructor for the service.<br>
+     * If the annotation processor generated a {@link ServiceFactory} for the class, uses that factory instead of reflection.<br>
      * If the class has a service provider constructor, uses that constructor.<br>
      * Otherwise, uses the first constructor.<br>
      *
@@ -106,14 +259,504 @@ public class Service<T> {
      * @throws InvalidConstructorCountException if the class does not have exactly one constructor or has more than one service provider constructor
      */
     private void extractConstructor(Class<?> clazz) {
+        var factory = generatedFactories.get(clazz);
+        if(factory.isPresent()) {
+            useGeneratedFactory(clazz, factory.get());
+            return;
+        }
+
+        useConstructor(clazz, findConstructor(clazz));
+    }
+
+    /**
+     * Finds the constructor to create the class with, that is its service provider constructor or its only constructor.<br>
+     *
+     * @param clazz the class to find the constructor of
+     * @return the constructor
+     * @throws InvalidConstructorCountException if the class does not have exactly one constructor or has more than one service provider constructor
+     */
+    private static Constructor<?> findConstructor(Class<?> clazz) {
         // Verify constructors
         var constructors = clazz.getConstructors();
         var serviceProviderConstructor = Arrays.stream(constructors).filter(x -> x.isAnnotationPresent(ServiceProviderConstructor.class)).toList();
         if(constructors.length != 1 && serviceProviderConstructor.isEmpty()) throw new InvalidConstructorCountException("The class " + clazz.getName() + " does not have exactly one constructor");
         if(serviceProviderConstructor.size() > 1) throw new InvalidConstructorCountException("The class " + clazz.getName() + " has more than one service provider constructor");
+        return serviceProviderConstructor.isEmpty() ? constructors[0] : serviceProviderConstructor.get(0);
+    }
+
+    private void useGeneratedFactory(Class<?> clazz, ServiceFactory<?> factory) {
+        generatedFactory = factory;
+        parameterKeys = factory.getParameterKeys();
+        parameters = createParameters(clazz, factory.getParameterTypes(), null, parameterKeys, null);
+    }
+
+    private void useConstructor(Class<?> clazz, Constructor<?> constructor) {
+        constructorParameterTypes = constructor.getParameterTypes();
+        parameterKeys = getParameterKeys(constructor);
+        parameters = createParameters(clazz, constructor.getParameterTypes(), constructor, parameterKeys, null);
+        instantiator = getInstantiator(constructor);
+    }
+
+    /**
+     * Reads the {@link ServiceKey} annotations of the constructor parameters.
+     *
+     * @param constructor the constructor to read the annotations of
+     * @return the key of every parameter, null for parameters without a key, or null if no parameter has a key
+     */
+    private static String[] getParameterKeys(Constructor<?> constructor) {
+        String[] keys = null;
+        var annotations = constructor.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if(!(annotation instanceof ServiceKey serviceKey)) continue;
+                if(keys == null) keys = new String[annotations.length];
+                keys[i] = serviceKey.value();
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the factory the annotation processor generated for the given class.
+     *
+     * @param clazz the class to get the generated factory for
+     * @return the generated factory, or null if no factory was generated for the class
+     */
+    static ServiceFactory<?> getGeneratedFactory(Class<?> clazz) {
+        return generatedFactories.get(clazz).orElse(null);
+    }
+
+    /**
+     * Creates the dependencies for the constructor parameters.<br>
+     * Parameters of type {@link Lazy}, {@link Provider}, {@link Optional}, {@link List} or {@link Set} depend on the service given as their type argument,
+     * the generic signature is only read for those parameters so that services created by a generated factory do not need reflection otherwise.
+     * Arrays of objects depend on every registration of their component type. Parameters with a {@link ServiceKey} depend on the keyed service.<br>
+     * Parameters of a generic class, and generic type arguments of the parameters above, depend on the closed type they declare,
+     * for example {@code Repository<User>}. The dependency falls back to the raw class if the closed type is not registered.<br>
+     *
+     * @param clazz the class the constructor belongs to
+     * @param parameterTypes the parameter types of the constructor
+     * @param constructor the constructor, or null if the service is created by a generated factory
+     * @param keys the key of every parameter, or null if no parameter has a key
+     * @param typeArguments the types the type variables of the class are bound to, or null if the class is not a closed open generic
+     * @return the dependencies, one per constructor parameter
+     * @throws InvalidServiceRegistrationException if a {@link Lazy}, {@link Provider}, {@link Optional}, {@link List} or {@link Set} parameter does not declare the type of the service,
+     * or a multi-binding parameter has a key
+     */
+    private static Dependency[] createParameters(Class<?> clazz, Class<?>[] parameterTypes, Constructor<?> constructor, String[] keys, Map<TypeVariable<?>, Type> typeArguments) {
+        var parameters = new Dependency[parameterTypes.length];
+        Type[] genericTypes = null;
+        for (int i = 0; i < parameters.length; i++) {
+            var parameterType = parameterTypes[i];
+            var key = keys != null ? keys[i] : null;
+            var kind = parameterType == Lazy.class ? Dependency.Kind.LAZY
+                    : parameterType == Provider.class ? Dependency.Kind.PROVIDER
+                    : parameterType == Optional.class ? Dependency.Kind.OPTIONAL
+                    : parameterType == List.class ? Dependency.Kind.LIST
+                    : parameterType == Set.class ? Dependency.Kind.SET
+                    : parameterType.isArray() && !parameterType.getComponentType().isPrimitive() ? Dependency.Kind.ARRAY
+                    : Dependency.Kind.INSTANCE;
+            if(kind == Dependency.Kind.INSTANCE) {
+                Type genericType = null;
+                if(typeArguments != null || parameterType.getTypeParameters().length > 0) {
+                    if(genericTypes == null) genericTypes = genericParameterTypes(clazz, parameterTypes, constructor);
+                    genericType = closeType(genericTypes[i], typeArguments);
+                }
+                // A parameter declared as a type variable of a closed open generic depends on the class the variable is bound to
+                if(genericType instanceof Class<?> bound) parameters[i] = Dependency.unlinked(kind, bound, null, key);
+                else parameters[i] = Dependency.unlinked(kind, parameterType, genericType, key);
+                continue;
+            }
+            if(key != null && kind != Dependency.Kind.LAZY && kind != Dependency.Kind.PROVIDER && kind != Dependency.Kind.OPTIONAL) throw new InvalidServiceRegistrationException("The parameter " + i + " of the constructor of " + clazz.getName() + " injects every registration of a service and cannot have a service key");
+            if(kind == Dependency.Kind.ARRAY) {
+                parameters[i] = Dependency.unlinked(kind, parameterType.getComponentType());
+                continue;
+            }
 
-        // Extract the constructor
-        constructor = serviceProviderConstructor.isEmpty() ? constructors[0] : serviceProviderConstructor.get(0);
+            if(genericTypes == null) genericTypes = genericParameterTypes(clazz, parameterTypes, constructor);
+            var type = genericTypes[i] instanceof ParameterizedType parameterized ? parameterized.getActualTypeArguments()[0] : null;
+            if(type != null && typeArguments != null) type = GenericTypes.substitute(type, typeArguments);
+            var genericType = type instanceof ParameterizedType ? GenericTypes.canonicalizeOrNull(type) : null;
+            if(type instanceof ParameterizedType parameterized) type = parameterized.getRawType();
+            if(!(type instanceof Class<?> target)) throw new InvalidServiceRegistrationException("The parameter " + i + " of the constructor of " + clazz.getName() + " must declare the class of the service it provides");
+            parameters[i] = Dependency.unlinked(kind, target, genericType, key);
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the closed type a parameter depends on, with the type variables of the class replaced by the types they are bound to.
+     *
+     * @return the canonical closed type, or null if the parameter is a plain class or does not resolve to a closed type
+     */
+    private static Type closeType(Type type, Map<TypeVariable<?>, Type> typeArguments) {
+        if(!(type instanceof ParameterizedType) && !(type instanceof TypeVariable<?>)) return null;
+        return GenericTypes.canonicalizeOrNull(typeArguments != null ? GenericTypes.substitute(type, typeArguments) : type);
+    }
+
+    private static Type[] genericParameterTypes(Class<?> clazz, Class<?>[] parameterTypes, Constructor<?> constructor) {
+        if(constructor != null) return constructor.getGenericParameterTypes();
+        try {
+            return clazz.getConstructor(parameterTypes).getGenericParameterTypes();
+        } catch (NoSuchMethodException e) {
+            throw new InvalidServiceRegistrationException("The generated factory of " + clazz.getName() + " does not match a public constructor");
+        }
+    }
+
+    /**
+     * Loads the factory that the annotation processor generated for the given class.<br>
+     *
+     * @param clazz the class to load the generated factory for
+     * @return the generated factory, or null if no factory was generated for the class
+     */
+    private static ServiceFactory<?> loadGeneratedFactory(Class<?> clazz) {
+        var loader = clazz.getClassLoader();
+        if(loader == null || clazz.isArray() || clazz.isPrimitive()) return null;
+
+        var factoryName = clazz.getName() + ServiceFactory.CLASS_NAME_SUFFIX;
+        try {
+            var factoryClass = Class.forName(factoryName, true, loader);
+            if(!ServiceFactory.class.isAssignableFrom(factoryClass)) return null;
+            return (ServiceFactory<?>) factoryClass.getConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new FailedToInstantiateServiceException("The generated factory " + factoryName + " could not be instantiated", e);
+        }
+    }
+
+    // Caches the compiled constructor of every class, so building another registry with the same classes does not compile it again
+    private static final ClassValue<Instantiator[]> instantiators = new ClassValue<>() {
+        @Override
+        protected Instantiator[] computeValue(Class<?> type) {
+            return new Instantiator[1];
+        }
+    };
+
+    private record Instantiator(Constructor<?> constructor, MethodHandle handle) {
+    }
+
+    private static Instantiator getInstantiator(Constructor<?> constructor) {
+        var cache = instantiators.get(constructor.getDeclaringClass());
+        var cached = cache[0];
+        if(cached != null && cached.constructor.equals(constructor)) return cached;
+
+        cached = new Instantiator(constructor, compileConstructor(constructor));
+        cache[0] = cached;
+        return cached;
+    }
+
+    /**
+     * Looks up the constructor of a service that was created from a {@link ServiceGraphSnapshot}.<br>
+     * If the class no longer has the recorded constructor, the snapshot is stale and the class is inspected again. The parameters
+     * of the constructor found then are not linked, they are looked up by type when the service is created.
+     *
+     * @throws InvalidConstructorCountException if the class is inspected again and does not have exactly one constructor or has more than one service provider constructor
+     */
+    private synchronized void resolveConstructor() {
+        if(instantiator != null) return;
+        var target = implementationClazz != null ? implementationClazz : clazz;
+        try {
+            instantiator = getInstantiator(target.getConstructor(constructorParameterTypes));
+        } catch (NoSuchMethodException e) {
+            var constructor = findConstructor(target);
+            constructorParameterTypes = constructor.getParameterTypes();
+            parameterKeys = getParameterKeys(constructor);
+            parameters = createParameters(target, constructorParameterTypes, constructor, parameterKeys, null);
+            instantiator = getInstantiator(constructor);
+        }
+    }
+
+    /**
+     * Compiles the constructor into a method handle taking the constructor parameters as an {@code Object[]}.<br>
+     * Returns null if the constructor cannot be invoked through a method handle, in which case the reflective
+     * constructor is used so that the same exceptions as before are reported.<br>
+     *
+     * @param constructor the constructor to compile
+     * @return the compiled constructor, or null if reflection should be used instead
+     */
+    private static MethodHandle compileConstructor(Constructor<?> constructor) {
+        if(Modifier.isAbstract(constructor.getDeclaringClass().getModifiers())) return null;
+        try {
+            return MethodHandles.publicLookup().unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, constructor.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Invokes the constructor (or generated factory) with the given parameters.<br>
+     * Exceptions thrown by the constructor are wrapped in an {@link InvocationTargetException} just like {@link Constructor#newInstance(Object...)} does.<br>
+     *
+     * @param params the constructor parameters
+     * @return the created instance
+     * @throws InvocationTargetException if the constructor throws an exception
+     * @throws InstantiationException if the class cannot be instantiated
+     * @throws IllegalAccessException if the constructor is not accessible
+     */
+    private Object newInstance(Object[] params) throws InvocationTargetException, InstantiationException, IllegalAccessException {
+        if(generatedFactory != null) {
+            try {
+                return generatedFactory.create(params);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        var instantiator = this.instantiator;
+        if(instantiator.handle == null) return instantiator.constructor.newInstance(params);
+        try {
+            return (Object) instantiator.handle.invokeExact(params);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Links the service to the registrations of its constructor parameters (or declared dependencies) in the given registry.<br>
+     * This is done once when the registry is created so that resolving the service can follow direct references
+     * instead of looking up every parameter by class. Parameters without a registration are left unlinked and
+     * reported as missing when the service is resolved, {@link Optional} parameters without a registration are injected as empty. {@link Lazy} and {@link Provider} parameters are linked to the
+     * service they provide, but are not reported as linked dependencies since they are only resolved after the service was created.
+     * {@link List}, {@link Set} and array parameters are linked to the {@link MultiBinding} of their element type and depend on every registration of it.<br>
+     *
+     * @param registry the registry to link the dependencies against
+     * @throws ClassNotAssignableException if the implementation class cannot be assigned to the service class
+     */
+    void link(ServiceRegistry registry) {
+        if(implementationClazz != null && !clazz.isAssignableFrom(implementationClazz)) throw new ClassNotAssignableException("The class " + implementationClazz.getName() + " is not assignable to " + clazz.getName());
+        if(hasConstructor()) {
+            var linkedParameters = new Dependency[parameters.length];
+            var linked = new ArrayList<Service<?>>(parameters.length);
+            for (int i = 0; i < linkedParameters.length; i++) {
+                linkedParameters[i] = parameters[i].link(registry);
+                if(linkedParameters[i].isMulti()) linked.addAll(Arrays.asList(linkedParameters[i].getBinding().services()));
+                else linked.add(linkedParameters[i].isDeferred() ? null : linkedParameters[i].getService());
+            }
+            parameters = linkedParameters;
+            dependencies = linked.toArray(Service<?>[]::new);
+            return;
+        }
+        if(declaredDependencies == null) return;
+
+        var linked = new Service<?>[declaredDependencies.length];
+        for (int i = 0; i < linked.length; i++) {
+            linked[i] = registry.getRegistration(declaredDependencies[i]);
+        }
+        dependencies = linked;
+    }
+
+    /**
+     * Returns every type the service looks up to resolve its constructor parameters or declared dependencies.<br>
+     * Generic parameters report their closed type and their raw class, since they fall back to the raw class if the closed type is not registered.
+     *
+     * @return the looked up types, including those of {@link Lazy}, {@link Provider} and multi-binding parameters
+     */
+    List<Type> getDependencyTypes() {
+        var types = new ArrayList<Type>();
+        if(hasConstructor()) {
+            for (Dependency parameter : parameters) {
+                types.add(parameter.getType());
+                if(parameter.getGenericType() != null) types.add(parameter.getGenericType());
+            }
+        }
+        if(declaredDependencies != null) types.addAll(Arrays.asList(declaredDependencies));
+        return types;
+    }
+
+    /**
+     * Sets the listener that is notified when the service is resolved, or null to remove it.
+     *
+     * @param listener the listener to notify
+     */
+    void setResolutionListener(ResolutionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the registrations the service was linked to, in the order of {@link #getRequiredServices()}.<br>
+     * Dependencies without a registration and {@link Lazy} or {@link Provider} parameters are null, multi-binding parameters
+     * are replaced by every registration of their element type.<br>
+     *
+     * @return the linked registrations, or null if the service is not linked or does not declare its dependencies
+     */
+    Service<?>[] getLinkedDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Creates an instance of the service using the given service provider to resolve its dependencies.<br>
+     * Instances created by factories are checked against the service class, instances created by the constructor
+     * were already checked when the service was linked.<br>
+     *
+     * @param collection the service provider to retrieve services from
+     * @param injectInto the class to inject the service into (if using an injection-only factory)
+     * @return an instance of the service
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public T create(ServiceProvider collection, Class<?> injectInto) {
+        return create(collection, injectInto, 0);
+    }
+
+    /**
+     * Creates an instance of the service as a dependency on the current resolution path, see {@link #create(ServiceProvider, Class)}.<br>
+     *
+     * @param collection the service provider to retrieve services from
+     * @param injectInto the class to inject the service into (if using an injection-only factory)
+     * @param depth the number of services that are being created on the current resolution path
+     * @return an instance of the service
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public T create(ServiceProvider collection, Class<?> injectInto, int depth) {
+        var listener = this.listener;
+        if(listener == null) return construct(collection, injectInto, depth);
+
+        long start = System.nanoTime();
+        T instance = construct(collection, injectInto, depth);
+        listener.onConstructed(this, System.nanoTime() - start, depth);
+        return instance;
+    }
+
+    /**
+     * Creates the instance with the constructor or the factory of the service.<br>
+     * The service is marked with the creating thread while the instance is created, so the thread fails with a {@link CircularDependencyException}
+     * as soon as it needs the service again, also through a factory or a {@link Lazy} or {@link Provider} lookup that starts a new resolution path.
+     * The path of the exception is collected while the resolution unwinds. If another thread creates the same service at the same time,
+     * the current thread keeps the mark in {@link #contended} instead.
+     */
+    private T construct(ServiceProvider collection, Class<?> injectInto, int depth) {
+        var thread = Thread.currentThread();
+        var owner = constructing;
+        if(owner == thread) throw new CircularDependencyException(List.of(this.clazz));
+        Set<Service<?>> path = null;
+        if(owner != null || !CONSTRUCTING.compareAndSet(this, null, thread)) {
+            path = contended.get();
+            if(!path.add(this)) throw new CircularDependencyException(List.of(this.clazz));
+        }
+
+        try {
+            if(hasConstructor()) return createInstanceFromClazz(collection, depth);
+
+            T obj;
+            try {
+                obj = getInstance(collection, injectInto);
+            } catch (ResolutionException e) {
+                e.addDependent(this.clazz);
+                throw e;
+            }
+            if(obj != null && clazz.isAssignableFrom(obj.getClass())) {
+                return obj;
+            }
+            String typeName = obj != null ? obj.getClass().toString() : "<NULL>";
+            throw new FailedToInstantiateServiceException("Could not get a service instance for the service " + clazz.getName() + ". The type " + typeName + " is not assignable to " + clazz.getName() + ".");
+        } catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
+            throw new FailedToInstantiateServiceException("The service " + clazz.getName() + " could not be instantiated", e);
+        } finally {
+            if(path == null) constructing = null;
+            else path.remove(this);
+        }
+    }
+
+    /**
+     * Returns the singleton instance of the service, creating it on first use.<br>
+     * Once the instance is published this is a single volatile read. The first creation locks only this service,
+     * so the instance is created exactly once while other singletons can still be created in parallel.<br>
+     *
+     * @param collection the service provider to retrieve services from
+     * @param injectInto the class the service is injected into
+     * @return the singleton instance of the service
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public T getOrCreateSingleton(ServiceProvider collection, Class<?> injectInto) {
+        return getOrCreateSingleton(collection, injectInto, 0);
+    }
+
+    /**
+     * Returns the singleton instance of the service as a dependency on the current resolution path, see {@link #getOrCreateSingleton(ServiceProvider, Class)}.<br>
+     *
+     * @param collection the service provider to retrieve services from
+     * @param injectInto the class the service is injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return the singleton instance of the service
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    public T getOrCreateSingleton(ServiceProvider collection, Class<?> injectInto, int depth) {
+        T instance = singletonObject;
+        if(instance != null) {
+            var listener = this.listener;
+            if(listener != null) listener.onCacheHit(this, depth);
+            return instance;
+        }
+
+        synchronized (this) {
+            instance = singletonObject;
+            if(instance == null) {
+                instance = create(collection, injectInto, depth);
+                singletonObject = instance;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Takes an instance of the pooled service out of its pool, or creates a new instance if the pool is empty.<br>
+     * The instance should be handed back with {@link #release(Object)} once it is no longer used.
+     *
+     * @param collection the service provider to retrieve services from
+     * @param injectInto the class the service is injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @return a pooled or new instance of the service
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    public T acquire(ServiceProvider collection, Class<?> injectInto, int depth) {
+        T instance = pool.acquire();
+        if(instance == null) return create(collection, injectInto, depth);
+
+        var listener = this.listener;
+        if(listener != null) listener.onCacheHit(this, depth);
+        return instance;
+    }
+
+    /**
+     * Resets the given instance with the reset callback of the service and hands it back to the pool.<br>
+     * If the pool is full the instance is dropped. If the reset callback fails the instance is dropped and the exception is thrown.
+     *
+     * @param instance an instance of the pooled service that is no longer used
+     * @return true if the instance was pooled, false if it was dropped
+     */
+    public boolean release(T instance) {
+        if(reset != null) reset.accept(instance);
+        return pool.release(instance);
+    }
+
+    /**
+     * Hands the given instance back to the pool like {@link #release(Object)}, unless the instance is already pooled.<br>
+     * Used for instances that no scope owns, which the caller may release more than once.
+     *
+     * @param instance an instance of the pooled service that is no longer used
+     * @return true if the instance was pooled, false if it was already pooled or dropped
+     */
+    public boolean releaseUnowned(T instance) {
+        if(pool.contains(instance)) return false;
+        return release(instance);
     }
 
     /**
@@ -145,14 +788,17 @@ public class Service<T> {
                 throw new InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException(clazz.getName());
             }
         }
-        return createInstanceFromClazz(collection);
+        return createInstanceFromClazz(collection, 0);
     }
 
     /**
      * Creates an instance of the class using the constructor with the given parameters.<br>
      * If the instance cannot be created, throws a ClassNotAssignableException.<br>
+     * Only the depth of the resolution path is passed down, when resolving a parameter fails every service on the path
+     * adds itself to the path of the exception while it unwinds.<br>
      *
      * @param collection the service provider to retrieve services from
+     * @param depth the number of services that are being created on the current resolution path
      * @return an instance of the class
      * @throws InvocationTargetException if the constructor throws an exception
      * @throws InstantiationException if the class cannot be instantiated
@@ -160,26 +806,32 @@ public class Service<T> {
      * @throws MissingServiceException if a service instance cannot be retrieved
      * @throws ClassNotAssignableException if the created instance cannot be assigned to the class
      */
-    private T createInstanceFromClazz(ServiceProvider collection) throws InvocationTargetException, InstantiationException, IllegalAccessException {
+    private T createInstanceFromClazz(ServiceProvider collection, int depth) throws InvocationTargetException, InstantiationException, IllegalAccessException {
         var clazz = implementationClazz != null ? implementationClazz : this.clazz; // Get the class depending on the parameters provided
+        // Services restored from a snapshot look up their constructor when they are first created
+        if(generatedFactory == null && instantiator == null) resolveConstructor();
 
         // Create the constructor parameters
-        var paramOrder = new Object[constructor.getParameterCount()];
-        var paramTypes = constructor.getParameterTypes();
-
-        // Try to get all services from the constructor
-        for (int i = 0; i < paramOrder.length; i++) {
-            paramOrder[i] = collection.getService(paramTypes[i], clazz);
-            if(paramOrder[i] == null) {
-                throw new MissingServiceException("The service " + clazz.getName() + " could not get a instance of the service " + paramTypes[i].getName());
+        var params = parameters;
+        var paramOrder = new Object[params.length];
+
+        // Try to get all services from the constructor, following the linked registrations when available
+        try {
+            for (int i = 0; i < paramOrder.length; i++) {
+                paramOrder[i] = params[i].resolve(collection, clazz, depth + 1);
+                if(paramOrder[i] == null) {
+                    throw new MissingServiceException("The service " + clazz.getName() + " could not get a instance of the service " + params[i].describe(), List.of(params[i].getType()));
+                }
             }
+        } catch (ResolutionException e) {
+            e.addDependent(this.clazz);
+            throw e;
         }
 
         // Create an instance of the class using the constructor with the given parameters.
-        // If the instance cannot be created, throw a ClassNotAssignableException.
-
-        var instance = constructor.newInstance(paramOrder);
-        if(!this.clazz.isAssignableFrom(instance.getClass())) throw new ClassNotAssignableException("The class " + instance.getClass().getName() + " is not assignable to " + clazz.getName());
+        // Linked services have already checked that the implementation is assignable to the service class.
+        var instance = newInstance(paramOrder);
+        if(dependencies == null && !this.clazz.isAssignableFrom(instance.getClass())) throw new ClassNotAssignableException("The class " + instance.getClass().getName() + " is not assignable to " + clazz.getName());
         return this.clazz.cast(instance);
     }
 
@@ -203,6 +855,7 @@ public class Service<T> {
      */
     public void setSingleton(boolean singleton) {
         isSingleton = singleton;
+        lifetime = computeLifetime();
     }
 
     /**
@@ -223,6 +876,7 @@ public class Service<T> {
      */
     public void setTransient(boolean aTransient) {
         isTransient = aTransient;
+        lifetime = computeLifetime();
     }
 
     /**
@@ -243,6 +897,7 @@ public class Service<T> {
      */
     public void setScoped(boolean scoped) {
         isScoped = scoped;
+        lifetime = computeLifetime();
     }
 
     /**
@@ -263,25 +918,178 @@ public class Service<T> {
      */
     public void setInjectionOnly(boolean injectionOnly) {
         isInjectionOnly = injectionOnly;
+        lifetime = computeLifetime();
+    }
+
+    /**
+     * Returns whether the service is pooled.<br>
+     * A pooled service hands out a new or reused instance every time it is requested, see {@link ServiceLifetime#POOLED}.<br>
+     *
+     * @return true if the service is pooled, false otherwise
+     */
+    public boolean isPooled() {
+        return isPooled;
+    }
+
+    /**
+     * Makes the service pooled, keeping at most the given number of released instances for reuse.<br>
+     * The pool is lock-free and does not allocate when instances are taken or handed back, see {@link BoundedPool}.<br>
+     *
+     * @param capacity the maximum number of pooled instances
+     * @param reset the callback that clears the state of an instance before it goes back to the pool, or null if instances are pooled as they are
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public void setPooled(int capacity, Consumer<? super T> reset) {
+        this.pool = new BoundedPool<>(capacity);
+        this.reset = reset;
+        isPooled = true;
+        lifetime = computeLifetime();
+    }
+
+    /**
+     * Returns the lifetime of the service.<br>
+     * If more than one lifetime flag is set, the lifetime is picked in the order singleton, transient, pooled, injection-only, scoped.<br>
+     *
+     * @return the lifetime of the service, or null if no lifetime flag is set
+     */
+    public ServiceLifetime getLifetime() {
+        return lifetime;
+    }
+
+    private ServiceLifetime computeLifetime() {
+        if(isSingleton) return ServiceLifetime.SINGLETON;
+        if(isTransient) return ServiceLifetime.TRANSIENT;
+        if(isPooled) return ServiceLifetime.POOLED;
+        if(isInjectionOnly) return ServiceLifetime.INJECTION_ONLY;
+        if(isScoped) return ServiceLifetime.SCOPED;
+        return null;
     }
 
     /**
      * Returns a list of the required services for the service's constructor.<br>
-     * The list is generated by inspecting the constructor's parameter types.<br>
+     * The list is generated by inspecting the constructor's parameter types, {@link Lazy}, {@link Provider}, {@link List}, {@link Set}
+     * and array parameters require the service given as their type argument or component type. Services created by a factory return the dependencies declared with {@link #setDeclaredDependencies(Class[])}.<br>
      *
-     * @return a list of the required services for the service's constructor
+     * @return a list of the required services for the service's constructor, empty if the service does not declare its dependencies
      */
     public List<? extends Class<?>> getRequiredServices() {
-        return Arrays.stream(constructor.getParameterTypes()).toList();
+        if(hasConstructor()) return Arrays.stream(parameters).map(Dependency::getType).toList();
+        return declaredDependencies != null ? List.of(declaredDependencies) : List.of();
+    }
+
+    /**
+     * Declares the services that the factory of this service depends on.<br>
+     * Factories resolve their dependencies themselves, declaring them allows the service to take part in the load order.<br>
+     *
+     * @param dependencies the classes of the services the factory depends on
+     */
+    public void setDeclaredDependencies(Class<?>... dependencies) {
+        this.declaredDependencies = dependencies;
+    }
+
+    /**
+     * Checks whether the dependencies of the service are known.<br>
+     * This is the case for services that have a constructor and for services that declare the dependencies of their factory.<br>
+     * @return true if the dependencies of the service are known, false otherwise
+     */
+    public boolean hasKnownDependencies() {
+        return hasConstructor() || declaredDependencies != null;
+    }
+
+    /**
+     * Checks whether the service is created by a factory or an injection-only factory.
+     *
+     * @return true if the service is created by a factory
+     */
+    boolean hasFactory() {
+        return factory != null || injectionOnlyFactory != null;
+    }
+
+    /**
+     * Returns the singleton instance of the service if the container created it, instances registered as a singleton are not returned.
+     *
+     * @return the singleton instance, or null if it was not created yet or was not created by the container
+     */
+    Object getCreatedSingleton() {
+        return hasFactory() || hasConstructor() ? singletonObject : null;
     }
 
     /**
      * Checks whether the service has a constructor or not.<br>
-     * This is used for checking the service's type internally.<br>
+     * This is used for checking the service's type internally, services created by a generated factory also have a constructor.<br>
      * @return true if the service has a constructor, false otherwise
      */
     public boolean hasConstructor() {
-        return constructor != null;
+        return constructorParameterTypes != null || generatedFactory != null;
+    }
+
+    /**
+     * Returns the parameter types of the constructor the service is created with.
+     *
+     * @return the parameter types, or null if the service is created by a generated factory or a factory
+     */
+    Class<?>[] getConstructorParameterTypes() {
+        return constructorParameterTypes;
+    }
+
+    /**
+     * Returns the {@link ServiceKey} of every constructor parameter.
+     *
+     * @return the key of every parameter, null for parameters without a key, or null if no parameter has a key
+     */
+    String[] getParameterKeys() {
+        return parameterKeys;
+    }
+
+    /**
+     * Returns whether the service is created by a factory generated by the annotation processor.
+     *
+     * @return true if the service is created by a generated factory, false otherwise
+     */
+    boolean isCreatedByGeneratedFactory() {
+        return generatedFactory != null;
+    }
+
+    /**
+     * Returns the implementation class of the service.
+     *
+     * @return the implementation class, or null if the service class itself is created
+     */
+    Class<? extends T> getImplementationType() {
+        return implementationClazz;
+    }
+
+    /**
+     * Returns the id of the service in the registry it is registered in.<br>
+     * Ids are small and dense, so they can be used to index arrays that store instances of the service.<br>
+     *
+     * @return the id of the service, or -1 if the service is not registered in a registry
+     */
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the key the service is registered with.<br>
+     * Keyed services are only returned when they are requested with their key, see {@link ServiceRegistry#getKeyedRegistration(Class, Object)}.<br>
+     *
+     * @return the key of the service, or null if the service is not keyed
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Sets the key the service is registered with, see {@link #getKey()}.<br>
+     *
+     * @param key the key of the service, or null if the service is not keyed
+     */
+    public void setKey(Object key) {
+        this.key = key;
     }
 
     /**
@@ -291,4 +1099,26 @@ public class Service<T> {
     public Class<T> getType() {
         return this.clazz;
     }
+
+    /**
+     * Returns the type the service is registered as, including its type arguments.<br>
+     * The registry looks services up by this type, services registered as a plain class return {@link #getType()}.
+     *
+     * @return the class of the service, or its parameterized type if it is registered as a generic type
+     */
+    public Type getServiceType() {
+        return serviceType != null ? serviceType : clazz;
+    }
+
+    /**
+     * Sets the generic type the service is registered as, for example {@code Repository<User>} for a service of the class {@code Repository}.<br>
+     *
+     * @param serviceType the closed type of the service, its raw class must be the class of the service
+     * @throws IllegalArgumentException if the type is not closed or its raw class is not the class of the service
+     */
+    public void setServiceType(Type serviceType) {
+        var canonical = GenericTypes.canonicalize(serviceType);
+        if(GenericTypes.getRawType(canonical) != clazz) throw new IllegalArgumentException("The type " + serviceType.getTypeName() + " is not a type of the service " + clazz.getName());
+        this.serviceType = canonical instanceof Class<?> ? null : canonical;
+    }
 }
@@ -0,0 +1,44 @@
+package org.di4j.di4j.registry;
+
+/**
+ * The `ServiceFactory` interface is implemented by the factories generated by the di4j annotation processor.<br>
+ * A generated factory calls the constructor of its service directly, so the service can be created without reflection.<br>
+ * The factory of a class is named after its binary name, the factory of {@code com.example.Outer.Inner} is {@code com.example.Outer$Inner_DI4JFactory},
+ * so it cannot collide with the factory of a top-level class {@code com.example.Outer_Inner}. It must have a public no-argument constructor,
+ * {@link Service} picks it up automatically when it exists.<br>
+ *
+ * @param <T> the type of the service the factory creates
+ */
+public interface ServiceFactory<T> {
+
+    /**
+     * The suffix that is appended to the name of a service class to get the name of its generated factory.
+     */
+    String CLASS_NAME_SUFFIX = "_DI4JFactory";
+
+    /**
+     * Returns the parameter types of the constructor that the factory calls.
+     *
+     * @return the parameter types of the constructor, in order
+     */
+    Class<?>[] getParameterTypes();
+
+    /**
+     * Creates a new instance of the service by calling its constructor with the given parameters.
+     *
+     * @param parameters the constructor parameters, in the order of {@link #getParameterTypes()}
+     * @return the created instance
+     * @throws Exception if the constructor throws an exception
+     */
+    T create(Object[] parameters) throws Exception;
+
+    /**
+     * Returns the keys of the {@link org.di4j.di4j.annotations.ServiceKey} annotations on the constructor parameters.
+     *
+     * @return the key of every parameter in the order of {@link #getParameterTypes()}, null for parameters without a key,
+     * or null if no parameter has a key
+     */
+    default String[] getParameterKeys() {
+        return null;
+    }
+}
@@ -0,0 +1,302 @@
+package org.di4j.di4j.registry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The `ServiceGraphSnapshot` class stores the analysed service graph in a compact binary file, so later starts do not have to
+ * inspect every class again.<br>
+ * The snapshot records for every service the constructor that was chosen with the keys of its parameters (or that a generated factory is used) and the load level
+ * of the service. It is only used if its fingerprint matches the fingerprint of the current registrations and class path, see {@link #fingerprint(List)}.<br>
+ * Services are created without inspecting or linking their classes, the recorded constructor is only looked up when a service is
+ * first created. Services whose recorded classes cannot be loaded, or whose class no longer has the recorded constructor, fall back to inspecting the class.<br>
+ */
+public final class ServiceGraphSnapshot {
+
+    private static final int MAGIC = 0x4449344A; // "DI4J"
+    private static final int VERSION = 3;
+
+    private static final byte NO_CONSTRUCTOR = 0;
+    private static final byte CONSTRUCTOR = 1;
+    private static final byte GENERATED_FACTORY = 2;
+
+    private final Entry[] entries;
+    private final boolean hasLoadLevels;
+
+    private record Entry(String type, String implementation, byte kind, String[] parameterTypes, String[] parameterKeys, int level) {
+    }
+
+    private ServiceGraphSnapshot(Entry[] entries, boolean hasLoadLevels) {
+        this.entries = entries;
+        this.hasLoadLevels = hasLoadLevels;
+    }
+
+    /**
+     * Computes the fingerprint a snapshot is validated against.<br>
+     * It covers the given descriptions of the registrations and every entry of the class path with its size and modification time.
+     * Directory entries cover every file they contain with its size and modification time, since recompiling a class does not change the directory itself.<br>
+     * The order of the registrations is part of the fingerprint, since the snapshot records the services by their id.
+     *
+     * @param registrations a description of every registration, in registration order
+     * @return the fingerprint
+     */
+    public static byte[] fingerprint(List<String> registrations) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        var classPath = System.getProperty("java.class.path", "");
+        update(digest, "version:" + VERSION);
+        for (String entry : classPath.split(File.pathSeparator)) {
+            var file = new File(entry);
+            update(digest, "classpath:" + entry + ":" + file.length() + ":" + file.lastModified());
+            // Recompiling a class does not change the size or modification time of its directory, so every file is covered
+            if(file.isDirectory()) updateDirectory(digest, file.toPath());
+        }
+
+        for (String registration : registrations) {
+            update(digest, "service:" + registration);
+        }
+        return digest.digest();
+    }
+
+    private static void updateDirectory(MessageDigest digest, Path directory) {
+        try (var files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile).sorted().forEach(file -> {
+                try {
+                    update(digest, "file:" + directory.relativize(file) + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            // A directory that cannot be read makes the fingerprint unique, so no snapshot matches it
+            update(digest, "unreadable:" + directory + ":" + System.nanoTime());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * Reads the snapshot from the given file by memory-mapping it.
+     *
+     * @param file the snapshot file
+     * @param fingerprint the fingerprint of the current registrations
+     * @return the snapshot, or null if the file does not exist, cannot be read or does not match the fingerprint
+     */
+    public static ServiceGraphSnapshot read(Path file, byte[] fingerprint) {
+        if(!Files.isRegularFile(file)) return null;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fingerprint);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static ServiceGraphSnapshot parse(ByteBuffer buffer, byte[] fingerprint) {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        var stored = new byte[buffer.getInt()];
+        buffer.get(stored);
+        if(!Arrays.equals(stored, fingerprint)) return null;
+
+        var hasLoadLevels = buffer.get() != 0;
+        int count = buffer.getInt();
+        var entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            var type = readString(buffer);
+            var implementation = readString(buffer);
+            var kind = buffer.get();
+            String[] parameterTypes = null;
+            String[] parameterKeys = null;
+            if(kind == CONSTRUCTOR) {
+                parameterTypes = new String[buffer.getInt()];
+                for (int j = 0; j < parameterTypes.length; j++) {
+                    parameterTypes[j] = readString(buffer);
+                    if(buffer.get() == 0) continue;
+                    if(parameterKeys == null) parameterKeys = new String[parameterTypes.length];
+                    parameterKeys[j] = readString(buffer);
+                }
+            }
+            entries[i] = new Entry(type, implementation, kind, parameterTypes, parameterKeys, buffer.getInt());
+        }
+        return new ServiceGraphSnapshot(entries, hasLoadLevels);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot of the given registry to the given file.<br>
+     * The file is written next to the target and moved into place, so concurrent readers never see a partial snapshot.
+     *
+     * @param file the snapshot file
+     * @param fingerprint the fingerprint of the registrations of the registry
+     * @param registry the registry to write the snapshot of
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, byte[] fingerprint, ServiceRegistry registry) throws IOException {
+        List<List<Service<?>>> levels;
+        try {
+            levels = registry.getLoadLevels();
+        } catch (RuntimeException e) {
+            levels = null; // Cycles are reported when the load levels are requested, not when the snapshot is written
+        }
+        var levelOf = new int[registry.size()];
+        Arrays.fill(levelOf, -1);
+        if(levels != null) {
+            for (int level = 0; level < levels.size(); level++) {
+                for (Service<?> service : levels.get(level)) {
+                    levelOf[service.getId()] = level;
+                }
+            }
+        }
+
+        var directory = file.toAbsolutePath().getParent();
+        if(directory != null) Files.createDirectories(directory);
+        var temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(fingerprint.length);
+                output.write(fingerprint);
+                output.writeBoolean(levels != null);
+                output.writeInt(registry.size());
+                for (int id = 0; id < registry.size(); id++) {
+                    var service = registry.getRegistration(id);
+                    var implementation = service.getImplementationType();
+                    writeString(output, service.getType().getName());
+                    writeString(output, implementation != null ? implementation.getName() : "");
+                    if(service.isCreatedByGeneratedFactory()) {
+                        output.writeByte(GENERATED_FACTORY);
+                    } else if(service.getConstructorParameterTypes() != null) {
+                        output.writeByte(CONSTRUCTOR);
+                        var parameterTypes = service.getConstructorParameterTypes();
+                        var parameterKeys = service.getParameterKeys();
+                        output.writeInt(parameterTypes.length);
+                        for (int i = 0; i < parameterTypes.length; i++) {
+                            writeString(output, parameterTypes[i].getName());
+                            var key = parameterKeys != null ? parameterKeys[i] : null;
+                            output.writeBoolean(key != null);
+                            if(key != null) writeString(output, key);
+                        }
+                    } else {
+                        output.writeByte(NO_CONSTRUCTOR);
+                    }
+                    output.writeInt(levelOf[id]);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Creates a service that is created by its class or implementation class, using the constructor or generated factory
+     * recorded in the snapshot instead of inspecting the class.<br>
+     * Falls back to {@link Service#Service(Class)} or {@link Service#Service(Class, Class)} if the snapshot has no matching record.
+     *
+     * @param id the id the service will have in the registry, that is its position in registration order
+     * @param clazz the class of the service
+     * @param implementation the implementation class of the service, or null if the service class is created
+     * @param <T> the type of the service
+     * @return the service
+     */
+    public <T> Service<T> newService(int id, Class<T> clazz, Class<? extends T> implementation) {
+        var service = fromEntry(id, clazz, implementation);
+        if(service != null) return service;
+        return implementation != null ? new Service<>(clazz, implementation) : new Service<>(clazz);
+    }
+
+    private <T> Service<T> fromEntry(int id, Class<T> clazz, Class<? extends T> implementation) {
+        var target = implementation != null ? implementation : clazz;
+        var entry = id < entries.length ? entries[id] : null;
+        if(entry == null || !entry.type.equals(clazz.getName()) || !entry.implementation.equals(implementation != null ? implementation.getName() : "")) return null;
+
+        if(entry.kind == GENERATED_FACTORY) {
+            var factory = Service.getGeneratedFactory(target);
+            return factory != null ? new Service<>(clazz, implementation, null, null, factory) : null;
+        }
+        if(entry.kind != CONSTRUCTOR) return null;
+
+        // The parameter types are loaded without linking them, the constructor is looked up when the service is first created
+        try {
+            var parameterTypes = new Class<?>[entry.parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = loadClass(entry.parameterTypes[i], target.getClassLoader());
+            }
+            return new Service<>(clazz, implementation, parameterTypes, entry.parameterKeys, null);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Class<?> loadClass(String name, ClassLoader loader) throws ClassNotFoundException {
+        return switch (name) {
+            case "boolean" -> boolean.class;
+            case "byte" -> byte.class;
+            case "char" -> char.class;
+            case "short" -> short.class;
+            case "int" -> int.class;
+            case "long" -> long.class;
+            case "float" -> float.class;
+            case "double" -> double.class;
+            default -> Class.forName(name, false, loader);
+        };
+    }
+
+    /**
+     * Sets the load levels recorded in the snapshot on the given registry, so they do not have to be computed again.<br>
+     * Nothing is set if the snapshot has no load levels or does not cover every service of the registry.
+     *
+     * @param registry the registry that was built from the same registrations as the snapshot
+     */
+    public void applyLoadLevels(ServiceRegistry registry) {
+        if(!hasLoadLevels || entries.length != registry.size()) return;
+        var levels = new ArrayList<List<Service<?>>>();
+        for (int id = 0; id < registry.size(); id++) {
+            var service = registry.getRegistration(id);
+            var entry = entries[id];
+            if(!entry.type.equals(service.getType().getName())) return;
+            if(entry.level < 0) {
+                if(service.hasKnownDependencies()) return;
+                continue;
+            }
+            while (levels.size() <= entry.level) levels.add(new ArrayList<>());
+            levels.get(entry.level).add(service);
+        }
+        registry.setLoadLevels(levels.stream().<List<Service<?>>>map(List::copyOf).toList());
+    }
+}
@@ -0,0 +1,97 @@
+package org.di4j.di4j.registry;
+
+import org.di4j.di4j.exceptions.ClassNotAssignableException;
+import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The `ServiceIndex` class reads the service index written by the di4j annotation processor.<br>
+ * The processor lists every class annotated with {@link org.di4j.di4j.annotations.Injectable} in the resource {@value #LOCATION},
+ * one entry per line of the form {@code LIFETIME implementation [type]}. Lines starting with {@code #} are comments.<br>
+ * Reading the index only loads the listed classes, the class path is never scanned.<br>
+ */
+public final class ServiceIndex {
+
+    /**
+     * The location of the service index in every jar or class directory.
+     */
+    public static final String LOCATION = "META-INF/di4j/services";
+
+    /**
+     * An entry of the service index.
+     *
+     * @param lifetime the lifetime to register the service with
+     * @param type the type to register the service as
+     * @param implementation the class that implements the service
+     */
+    public record Entry(ServiceLifetime lifetime, Class<?> type, Class<?> implementation) {
+    }
+
+    private ServiceIndex() {
+    }
+
+    /**
+     * Reads every service index visible to the given class loader.<br>
+     * The classes are loaded without initializing them.
+     *
+     * @param loader the class loader to read the indexes and load the classes with
+     * @return the entries of all indexes, in the order they were read
+     * @throws InvalidServiceRegistrationException if an entry is malformed, its class cannot be loaded or its lifetime cannot be indexed
+     * @throws ClassNotAssignableException if the implementation of an entry is not assignable to its type
+     * @throws UncheckedIOException if an index cannot be read
+     */
+    public static List<Entry> read(ClassLoader loader) {
+        var entries = new ArrayList<Entry>();
+        try {
+            for (URL url : Collections.list(loader.getResources(LOCATION))) {
+                try (var reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if(line.isEmpty() || line.startsWith("#")) continue;
+                        entries.add(parse(line, url, loader));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the service index " + LOCATION, e);
+        }
+        return entries;
+    }
+
+    private static Entry parse(String line, URL url, ClassLoader loader) {
+        var parts = line.split("\\s+");
+        if(parts.length < 2 || parts.length > 3) throw new InvalidServiceRegistrationException("The service index " + url + " has a malformed entry: " + line);
+
+        ServiceLifetime lifetime;
+        try {
+            lifetime = ServiceLifetime.valueOf(parts[0]);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidServiceRegistrationException("The service index " + url + " has an unknown lifetime: " + line);
+        }
+        if(lifetime == ServiceLifetime.INJECTION_ONLY) throw new InvalidServiceRegistrationException("The service index " + url + " has an injection-only service, they need a factory: " + line);
+        if(lifetime == ServiceLifetime.POOLED) throw new InvalidServiceRegistrationException("The service index " + url + " has a pooled service, they need a capacity: " + line);
+
+        var implementation = load(parts[1], url, loader);
+        var type = parts.length == 3 ? load(parts[2], url, loader) : implementation;
+        if(!type.isAssignableFrom(implementation)) throw new ClassNotAssignableException("The indexed service " + implementation.getName() + " is not assignable to " + type.getName());
+        return new Entry(lifetime, type, implementation);
+    }
+
+    private static Class<?> load(String name, URL url, ClassLoader loader) {
+        try {
+            return Class.forName(name, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new InvalidServiceRegistrationException("The class " + name + " listed in the service index " + url + " could not be loaded, the index may be out of date");
+        }
+    }
+}
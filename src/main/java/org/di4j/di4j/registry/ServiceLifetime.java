@@ -0,0 +1,29 @@
+package org.di4j.di4j.registry;
+
+/**
+ * The `ServiceLifetime` enum describes how long an instance of a service lives.<br>
+ * It is derived from the lifetime flags of a {@link Service} so that providers only have to branch on a single value.<br>
+ */
+public enum ServiceLifetime {
+    /**
+     * The service is created once and the same instance is returned every time it is requested.
+     */
+    SINGLETON,
+    /**
+     * The service is created once per scope and the same instance is returned every time it is requested within that scope.
+     */
+    SCOPED,
+    /**
+     * The service is created every time it is requested.
+     */
+    TRANSIENT,
+    /**
+     * The service is created only when it is injected into another service.
+     */
+    INJECTION_ONLY,
+    /**
+     * A new or reused instance is handed out every time the service is requested. The instance goes back to the pool of its
+     * registration when the scope that resolved it is reset or closed, or when it is released with {@link org.di4j.di4j.ServiceProvider#releaseService(Class, Object)}.
+     */
+    POOLED
+}
@@ -1,33 +1,515 @@
 package org.di4j.di4j.registry;
 
 import org.di4j.di4j.ServiceProvider;
+import org.di4j.di4j.exceptions.CircularDependencyException;
 import org.di4j.di4j.exceptions.ClassNotAssignableException;
 import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
 import org.di4j.di4j.exceptions.InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException;
 import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
+import org.di4j.di4j.metrics.ResolutionListener;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.Comparator;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The `ServiceRegistry` class represents a registry of services that can be provided by a service provider.<br>
- * It contains a map of services and provides methods to retrieve a service instance from the registry.<br>
+ * Every registration is given a small integer id that indexes a flat array of services, scopes use the same id to store their instances.<br>
+ * A type can be registered more than once: looking up the type returns its last registration, while the {@link MultiBinding} of the type
+ * holds all of them in registration order.<br>
+ * Services with a key (see {@link Service#getKey()}) are kept apart from the other registrations: they are indexed per type and
+ * only returned by {@link #getKeyedRegistration(Class, Object)}.<br>
+ * Services registered as a generic type (see {@link Service#getServiceType()}) are looked up by their canonical type, see {@link GenericTypes}.
+ * Plain classes keep the lookup by class. An {@link OpenGenericService} is closed the first time one of its closed types is requested,
+ * the closed service is added to the registry with the next id and found by the same lookup afterwards.<br>
+ * An overlay registry (see {@link #overlay(List, List)}) shares the registrations of its parent and only holds the services that differ.
+ * A replacing registry (see {@link #replace(List, List)}) is created the same way, but does not keep its parent.<br>
+ * It provides methods to retrieve a service instance from the registry.<br>
  */
 public class ServiceRegistry {
 
+    private volatile Service<?>[] services;
+    private final Map<Class<?>, Integer> ids;
+    private final Map<Class<?>, MultiBinding<?>> bindings;
+    private final Map<Class<?>, KeyedRegistrations> keyed;
+    private final Map<Type, Service<?>> genericRegistrations;
+    private final Map<Type, MultiBinding<?>> genericBindings;
+    private final Map<Type, KeyedRegistrations> genericKeyed;
+    private final Map<Class<?>, OpenGenericService> openGenerics;
+    private final Map<Type, Service<?>> closing = new LinkedHashMap<>(); // Guarded by this
+    private final Set<Type> closedTypes = new HashSet<>(); // Guarded by this
+    private final ServiceRegistry parent;
+    private final int parentSize;
+    private final Set<Type> shadowed;
+    private final BitSet inheritedIds; // The ids of the services a replacing registry shares with the parent of the registry it replaced
+    private volatile boolean overlaid; // Set once a registry was overlaid, its services may then be shared with the overlays
+    private volatile Dependents dependents;
+    private ResolutionListener listener;
+    private boolean trackingTransientDisposables;
+    private volatile List<List<Service<?>>> loadLevels;
 
-    private Map<Class<?>, Service<?>> services = new HashMap<>();
+    // Caches the id of a class on the class itself so lookups do not have to hash the class
+    private final ClassValue<Integer> idLookup = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            var id = ids.get(type);
+            if(id != null) return id;
+            return parent != null ? parent.idLookup.get(type) : -1;
+        }
+    };
+
+    // Caches the multi-binding of a class on the class itself, types without a registration get an empty binding
+    private final ClassValue<MultiBinding<?>> bindingLookup = new ClassValue<>() {
+        @Override
+        protected MultiBinding<?> computeValue(Class<?> type) {
+            var binding = bindings.get(type);
+            if(binding != null) return binding;
+            return parent != null ? inherit(parent.bindingLookup.get(type)) : new MultiBinding<>(type, new Service<?>[0]);
+        }
+    };
+
+    // Caches the keyed registrations of a class on the class itself, so a keyed lookup only has to find the key
+    private final ClassValue<KeyedRegistrations> keyedLookup = new ClassValue<>() {
+        @Override
+        protected KeyedRegistrations computeValue(Class<?> type) {
+            var registrations = keyed.get(type);
+            if(registrations != null) return registrations;
+            return parent != null ? parent.keyedLookup.get(type).inherit(ServiceRegistry.this) : KeyedRegistrations.EMPTY;
+        }
+    };
 
     /**
-     * Creates a new service registry with the given map of services.
+     * Creates a new service registry with the given map of services.<br>
+     * Every service is given an id and linked to the registrations of its dependencies, so the registrations should not be changed afterwards.
      *
      * @param services the map of services to register
+     * @throws ClassNotAssignableException if the implementation of a service cannot be assigned to the service class
      */
     public ServiceRegistry(Map<Class<?>, Service<?>> services) {
+        this(new ArrayList<>(services.keySet()), new ArrayList<>(services.values()), List.of());
+    }
+
+    /**
+     * Creates a new service registry with the given registrations, every service is registered as its {@link Service#getType()}.<br>
+     * The ids of the services follow the order of the list. If a type is registered more than once, the last registration is
+     * returned by {@link #getRegistration(Class)} and all of them by {@link #getMultiBinding(Class)}.<br>
+     * Every service is linked to the registrations of its dependencies, so the registrations should not be changed afterwards.
+     *
+     * @param registrations the services to register, in registration order
+     * @throws ClassNotAssignableException if the implementation of a service cannot be assigned to the service class
+     */
+    public ServiceRegistry(List<Service<?>> registrations) {
+        this(registrations, List.of());
+    }
+
+    /**
+     * Creates a new service registry with the given registrations and open generic registrations, see {@link #ServiceRegistry(List)}.<br>
+     * Every service is registered as its {@link Service#getServiceType()}. Open generic services are closed while the services are linked
+     * if a service depends on one of their closed types, or later when a closed type is requested for the first time.
+     *
+     * @param registrations the services to register, in registration order
+     * @param openGenerics the open generic services to register, a later registration of the same class replaces an earlier one
+     * @throws ClassNotAssignableException if the implementation of a service cannot be assigned to the service class
+     */
+    public ServiceRegistry(List<Service<?>> registrations, List<OpenGenericService> openGenerics) {
+        this(registrations.stream().map(Service::getServiceType).toList(), registrations, openGenerics);
+    }
+
+    private ServiceRegistry(List<? extends Type> types, List<Service<?>> registrations, List<OpenGenericService> openGenerics) {
+        this.parent = null;
+        this.parentSize = 0;
+        this.shadowed = Set.of();
+        this.inheritedIds = null;
+        var services = new Service<?>[registrations.size()];
+        this.ids = new HashMap<>(registrations.size() * 2);
+        this.genericRegistrations = new ConcurrentHashMap<>();
+
+        var registrationsByType = new HashMap<Type, List<Service<?>>>();
+        var keyedByType = new HashMap<Type, Map<Object, Service<?>>>();
+        for (int id = 0; id < services.length; id++) {
+            var service = registrations.get(id);
+            var type = types.get(id);
+            service.setId(id);
+            services[id] = service;
+            if(service.getKey() != null) {
+                keyedByType.computeIfAbsent(type, x -> new LinkedHashMap<>()).put(service.getKey(), service);
+                continue;
+            }
+            if(type instanceof Class<?> clazz) this.ids.put(clazz, id);
+            else this.genericRegistrations.put(type, service);
+            registrationsByType.computeIfAbsent(type, x -> new ArrayList<>(1)).add(service);
+        }
         this.services = services;
+
+        this.bindings = new HashMap<>(registrationsByType.size() * 2);
+        this.genericBindings = new ConcurrentHashMap<>();
+        registrationsByType.forEach((type, list) -> {
+            var binding = new MultiBinding<>(GenericTypes.getRawType(type), list.toArray(Service<?>[]::new));
+            if(type instanceof Class<?> clazz) bindings.put(clazz, binding);
+            else genericBindings.put(type, binding);
+        });
+        this.keyed = new HashMap<>(keyedByType.size() * 2);
+        this.genericKeyed = new HashMap<>();
+        keyedByType.forEach((type, list) -> {
+            if(type instanceof Class<?> clazz) keyed.put(clazz, new KeyedRegistrations(list));
+            else genericKeyed.put(type, new KeyedRegistrations(list));
+        });
+        this.openGenerics = new HashMap<>(openGenerics.size() * 2);
+        for (OpenGenericService openGeneric : openGenerics) {
+            this.openGenerics.put(openGeneric.getType(), openGeneric);
+        }
+
+        // Linking may close open generics, which adds their services to the end of the array and links them right away
+        for (Service<?> service : services) {
+            service.link(this);
+        }
+    }
+
+    private ServiceRegistry(ServiceRegistry parent, List<Service<?>> overrides, List<OpenGenericService> openGenerics) {
+        this.parent = parent;
+        var parentServices = parent.services;
+        this.parentSize = parentServices.length;
+        this.listener = parent.listener;
+        this.trackingTransientDisposables = parent.trackingTransientDisposables;
+        this.ids = new HashMap<>();
+        this.bindings = new HashMap<>();
+        this.keyed = new HashMap<>();
+        this.genericRegistrations = new ConcurrentHashMap<>();
+        this.genericBindings = new ConcurrentHashMap<>();
+        this.genericKeyed = new HashMap<>();
+        this.openGenerics = new HashMap<>(parent.openGenerics);
+        this.shadowed = new HashSet<>();
+        this.inheritedIds = null;
+
+        // Every service keeps the id it has in the parent, the overrides are added after them
+        var services = Arrays.copyOf(parentServices, parentSize + overrides.size());
+        var overridden = new LinkedHashSet<Type>();
+        var registrationsByType = new HashMap<Type, List<Service<?>>>();
+        var keyedByType = new HashMap<Type, Map<Object, Service<?>>>();
+        for (int i = 0; i < overrides.size(); i++) {
+            var service = overrides.get(i);
+            var type = service.getServiceType();
+            service.setId(parentSize + i);
+            services[parentSize + i] = service;
+            overridden.add(type);
+            if(service.getKey() != null) {
+                keyedByType.computeIfAbsent(type, x -> new LinkedHashMap<>()).put(service.getKey(), service);
+                continue;
+            }
+            if(type instanceof Class<?> clazz) this.ids.put(clazz, parentSize + i);
+            else this.genericRegistrations.put(type, service);
+            registrationsByType.computeIfAbsent(type, x -> new ArrayList<>(1)).add(service);
+        }
+        for (OpenGenericService openGeneric : openGenerics) {
+            this.openGenerics.put(openGeneric.getType(), openGeneric);
+            // The types the parent closed are closed again with the overriding registration
+            var closed = parent.getClosedTypes(openGeneric.getType());
+            shadowed.addAll(closed);
+            overridden.addAll(closed);
+        }
+
+        // Only the services that depend on an overridden service, directly or through other services, are copied
+        var owned = new ArrayList<>(overrides);
+        var byType = parent.getDependents();
+        var pending = new ArrayDeque<>(overridden);
+        var visited = new HashSet<>(overridden);
+        // A factory that does not declare its dependencies may look up any overridden service through the provider it is given,
+        // a shared instance would be created with the services of whichever registry resolves it first
+        for (int id = 0; id < parentSize; id++) {
+            var service = services[id];
+            if(service == null || service.hasKnownDependencies() || !service.hasFactory()) continue;
+            var copy = service.copy();
+            copy.setId(id);
+            services[id] = copy;
+            owned.add(copy);
+            if(visited.add(service.getServiceType())) pending.add(service.getServiceType());
+            if(visited.add(service.getType())) pending.add(service.getType());
+        }
+        while (!pending.isEmpty()) {
+            for (Service<?> dependent : byType.getOrDefault(pending.poll(), List.of())) {
+                int id = dependent.getId();
+                if(id >= parentSize || services[id] != dependent) continue;
+                var copy = dependent.copy();
+                copy.setId(id);
+                services[id] = copy;
+                owned.add(copy);
+                if(visited.add(dependent.getServiceType())) pending.add(dependent.getServiceType());
+                if(visited.add(dependent.getType())) pending.add(dependent.getType());
+            }
+        }
+        this.services = services;
+
+        registrationsByType.forEach((type, list) -> {
+            var binding = new MultiBinding<>(GenericTypes.getRawType(type), list.toArray(Service<?>[]::new));
+            if(type instanceof Class<?> clazz) bindings.put(clazz, binding);
+            else genericBindings.put(type, binding);
+        });
+        keyedByType.forEach((type, map) -> {
+            var inherited = type instanceof Class<?> clazz ? parent.keyedLookup.get(clazz) : parent.getKeyedRegistrations(type);
+            var merged = inherited.inherit(this).with(map);
+            if(type instanceof Class<?> clazz) keyed.put(clazz, merged);
+            else genericKeyed.put(type, merged);
+        });
+
+        for (Service<?> service : owned) {
+            service.link(this);
+        }
+    }
+
+    /**
+     * Creates a registry with the registrations the given overlay resolves, without referring to the registries it overlays.<br>
+     * Every lookup of every layer is resolved once through the overlay, the services no lookup reaches any more are dropped and
+     * leave their id empty. The remaining services keep their ids, so scopes created with the overlay or its parents keep working.
+     */
+    private ServiceRegistry(ServiceRegistry overlay) {
+        this.parent = null;
+        this.parentSize = 0;
+        this.shadowed = Set.of();
+        this.listener = overlay.listener;
+        this.trackingTransientDisposables = overlay.trackingTransientDisposables;
+        this.ids = new HashMap<>();
+        this.bindings = new HashMap<>();
+        this.keyed = new HashMap<>();
+        this.genericRegistrations = new ConcurrentHashMap<>();
+        this.genericBindings = new ConcurrentHashMap<>();
+        this.genericKeyed = new HashMap<>();
+        this.openGenerics = new HashMap<>(overlay.openGenerics);
+
+        // None of these lookups closes an open generic, so the services of the overlay do not change while they are resolved
+        for (var layer = overlay; layer != null; layer = layer.parent) {
+            for (Class<?> type : layer.ids.keySet()) {
+                var service = overlay.getRegistration(type);
+                if(service != null) ids.put(type, service.getId());
+            }
+            for (Class<?> type : layer.bindings.keySet()) {
+                var binding = overlay.getMultiBinding(type);
+                if(binding != null) bindings.put(type, binding);
+            }
+            for (Class<?> type : layer.keyed.keySet()) {
+                keyed.put(type, overlay.keyedLookup.get(type));
+            }
+            for (Type type : layer.genericRegistrations.keySet()) {
+                var service = overlay.findGenericRegistration(type);
+                if(service != null) genericRegistrations.put(type, service);
+            }
+            for (Type type : layer.genericBindings.keySet()) {
+                // Empty bindings are not kept, an open generic registered later may close them
+                var binding = overlay.findGenericBinding(type);
+                if(binding != null && binding.services().length > 0) genericBindings.put(type, binding);
+            }
+            for (Type type : layer.genericKeyed.keySet()) {
+                var registrations = overlay.findGenericKeyed(type);
+                if(registrations != null) genericKeyed.put(type, registrations);
+            }
+            synchronized (layer) {
+                closedTypes.addAll(layer.closedTypes);
+            }
+        }
+
+        // Keep the services the lookups reach and the services they depend on
+        var all = overlay.services;
+        var services = new Service<?>[all.length];
+        var pending = new ArrayDeque<Service<?>>();
+        ids.values().forEach(id -> pending.add(all[id]));
+        bindings.values().forEach(binding -> pending.addAll(Arrays.asList(binding.services())));
+        keyed.values().forEach(registrations -> pending.addAll(Arrays.asList(registrations.services)));
+        pending.addAll(genericRegistrations.values());
+        genericBindings.values().forEach(binding -> pending.addAll(Arrays.asList(binding.services())));
+        genericKeyed.values().forEach(registrations -> pending.addAll(Arrays.asList(registrations.services)));
+        while (!pending.isEmpty()) {
+            var service = pending.poll();
+            int id = service.getId();
+            if(id >= all.length || all[id] != service || services[id] != null) continue;
+            services[id] = service;
+            for (Service<?> dependency : linkedDependencies(service)) {
+                if(dependency != null) pending.add(dependency);
+            }
+        }
+        this.services = services;
+
+        // The services the replaced registry shared with its own parent still belong to that parent
+        var replaced = overlay.parent;
+        this.inheritedIds = new BitSet(services.length);
+        for (Service<?> service : services) {
+            if(service != null && replaced != null && replaced.isInherited(service)) inheritedIds.set(service.getId());
+        }
+        this.overlaid = replaced != null && replaced.overlaid;
+    }
+
+    /**
+     * Creates a registry that overlays the given registrations on this registry, for example the services of a single tenant.<br>
+     * The overlay shares every registration of this registry, and with it every singleton instance, except for the services that
+     * depend on an overridden type: those are copied without their instances and linked to the overrides, so building the overlay
+     * takes time and memory in proportion to the overrides and their dependents instead of the whole graph.<br>
+     * An overriding registration replaces every registration of its type, including the registrations of its {@link MultiBinding}.
+     * A keyed override only replaces the registration with the same key. An open generic override replaces the open generic registration of its class,
+     * services registered for a closed type keep taking precedence.<br>
+     * Services created by a factory that does not declare its dependencies (see {@link Service#setDeclaredDependencies(Class[])}) are always copied
+     * together with their dependents, since the factory may look up any overridden service.
+     * The overlay keeps the resolution listener of this registry.
+     *
+     * @param overrides the services to register in the overlay, in registration order
+     * @param openGenerics the open generic services to register in the overlay
+     * @return the overlay registry
+     * @throws ClassNotAssignableException if the implementation of a service cannot be assigned to the service class
+     */
+    public ServiceRegistry overlay(List<Service<?>> overrides, List<OpenGenericService> openGenerics) {
+        overlaid = true;
+        return new ServiceRegistry(this, overrides, openGenerics);
+    }
+
+    /**
+     * Creates a registry that replaces this registry with the given registrations, for example to update a running provider.<br>
+     * The registrations are applied like {@link #overlay(List, List)}, so the same singletons are kept and re-created, but the new registry
+     * does not refer to this one: every lookup is resolved once and the services that were replaced are dropped, so a registry that is
+     * replaced over and over does not build up a chain of overlays. The services that are kept keep their ids, the ids of dropped services stay empty.<br>
+     * The singletons that were replaced can be disposed with {@link #closeReplacedSingletons(ServiceRegistry)} once the new registry is in use.
+     *
+     * @param overrides the services to register, in registration order
+     * @param openGenerics the open generic services to register
+     * @return the replacing registry
+     * @throws ClassNotAssignableException if the implementation of a service cannot be assigned to the service class
+     */
+    public ServiceRegistry replace(List<Service<?>> overrides, List<OpenGenericService> openGenerics) {
+        return new ServiceRegistry(new ServiceRegistry(this, overrides, openGenerics));
+    }
+
+    /**
+     * Closes the {@link AutoCloseable} singletons of the given registry that this registry no longer uses, see {@link #replace(List, List)}.<br>
+     * Only instances the container created are closed, instances registered as a singleton are left to their owner. Nothing is closed
+     * if the given registry was overlaid, since its overlays may still share the singletons, and neither are the singletons the given registry
+     * shares with its parent. The singletons are closed in reverse id order, every singleton is closed even if closing another one fails.
+     *
+     * @param previous the registry this registry replaced
+     * @throws ScopeDisposalException if one or more singletons could not be closed
+     */
+    public void closeReplacedSingletons(ServiceRegistry previous) {
+        if(previous.overlaid) return;
+        var replaced = previous.services;
+        var services = this.services;
+        ScopeDisposalException failure = null;
+        for (int id = replaced.length - 1; id >= 0; id--) {
+            var service = replaced[id];
+            if(service == null || (id < services.length && services[id] == service) || previous.isInherited(service)) continue;
+            if(!(service.getCreatedSingleton() instanceof AutoCloseable closeable)) continue;
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                if(failure == null) failure = new ScopeDisposalException("Could not dispose every replaced singleton", e);
+                else failure.addSuppressed(e);
+            }
+        }
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * Returns the registry this registry overlays.
+     *
+     * @return the parent registry, or null if this registry is not an overlay
+     */
+    public ServiceRegistry getParent() {
+        return parent;
+    }
+
+    /**
+     * Indexes the services of this registry by the types they look up, so an overlay finds the dependents of its overrides
+     * without visiting the whole graph. The index is built once and rebuilt only after open generic services were closed.
+     */
+    private Map<Type, List<Service<?>>> getDependents() {
+        var services = this.services;
+        var index = dependents;
+        if(index != null && index.size == services.length) return index.byType;
+
+        var byType = new HashMap<Type, List<Service<?>>>();
+        for (Service<?> service : services) {
+            if(service == null) continue;
+            for (Type type : service.getDependencyTypes()) {
+                var list = byType.computeIfAbsent(type, x -> new ArrayList<>(2));
+                if(list.isEmpty() || list.get(list.size() - 1) != service) list.add(service);
+            }
+        }
+        dependents = new Dependents(services.length, byType);
+        return byType;
+    }
+
+    private record Dependents(int size, Map<Type, List<Service<?>>> byType) {
+    }
+
+    /**
+     * Returns the closed types of the given open generic class that this registry, or a registry it overlays, has closed.
+     */
+    private List<Type> getClosedTypes(Class<?> rawType) {
+        var types = new ArrayList<Type>();
+        synchronized (this) {
+            for (Type type : closedTypes) {
+                if(GenericTypes.getRawType(type) == rawType) types.add(type);
+            }
+        }
+        if(parent != null) types.addAll(parent.getClosedTypes(rawType));
+        return types;
+    }
+
+    /**
+     * Returns the service of this overlay that replaces the given service of the parent.
+     *
+     * @return the service with the same id, or null if the parent added the service after the overlay was created
+     */
+    private Service<?> inherit(Service<?> service) {
+        return service.getId() < parentSize ? services[service.getId()] : null;
+    }
+
+    private MultiBinding<?> inherit(MultiBinding<?> binding) {
+        var inherited = binding.services();
+        var services = new Service<?>[inherited.length];
+        var changed = false;
+        for (int i = 0; i < services.length; i++) {
+            services[i] = inherit(inherited[i]);
+            if(services[i] == null) return null;
+            changed |= services[i] != inherited[i];
+        }
+        return changed ? new MultiBinding<>(binding.getType(), services) : binding;
+    }
+
+    private boolean isInherited(Service<?> service) {
+        int id = service.getId();
+        if(inheritedIds != null) return inheritedIds.get(id) && id < services.length && services[id] == service;
+        return parent != null && id < parentSize && parent.services[id] == service;
+    }
+
+    /**
+     * Finds the registration of the given canonical type in this registry or the registries it overlays, without closing an open generic.
+     */
+    private Service<?> findGenericRegistration(Type type) {
+        var service = genericRegistrations.get(type);
+        if(service != null || parent == null || shadowed.contains(type)) return service;
+        var inherited = parent.findGenericRegistration(type);
+        return inherited != null ? inherit(inherited) : null;
+    }
+
+    private MultiBinding<?> findGenericBinding(Type type) {
+        var binding = genericBindings.get(type);
+        if(binding != null || parent == null || shadowed.contains(type)) return binding;
+        var inherited = parent.findGenericBinding(type);
+        return inherited != null ? inherit(inherited) : null;
+    }
+
+    private KeyedRegistrations findGenericKeyed(Type type) {
+        var registrations = genericKeyed.get(type);
+        if(registrations != null || parent == null) return registrations;
+        var inherited = parent.findGenericKeyed(type);
+        return inherited != null ? inherited.inherit(this) : null;
     }
 
     /**
@@ -62,16 +544,11 @@ public class ServiceRegistry {
     public <T> T getService(Class<T> type, ServiceProvider serviceProvider, Class<?> context) {
         Service<T> service = getRegistration(type);
         if(service == null) return null;
-        try {
-            var obj = service.getInstance(serviceProvider, context);
-            if(obj != null && type.isAssignableFrom(obj.getClass())) {
-                return type.cast(obj);
-            }
-            String typeName = obj != null ? obj.getClass().toString() : "<NULL>";
-            throw new FailedToInstantiateServiceException("Could not get a service instance for the service " + type.getName() + ". The type " + typeName + " is not assignable to " + type.getName() + ".");
-        } catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
-            throw new FailedToInstantiateServiceException("The service " + type.getName() + " could not be instantiated", e);
+        var obj = service.create(serviceProvider, context);
+        if(service.getType() == type || type.isAssignableFrom(obj.getClass())) {
+            return obj;
         }
+        throw new FailedToInstantiateServiceException("Could not get a service instance for the service " + type.getName() + ". The type " + obj.getClass() + " is not assignable to " + type.getName() + ".");
     }
 
     /**
@@ -82,44 +559,430 @@ public class ServiceRegistry {
      * @return the registration for the service of the given type, or null if the service is not registered
      */
     public <T> Service<T> getRegistration(Class<T> type) {
-        return (Service<T>) services.get(type);
+        int id = idLookup.get(type);
+        return id < 0 ? null : (Service<T>) services[id];
+    }
+
+    /**
+     * Retrieves the registration for the service of the given type, which may be a parameterized type such as {@code Repository<User>}.<br>
+     * Classes are looked up like {@link #getRegistration(Class)}. Parameterized types are looked up by their canonical type, if no
+     * service is registered as the type an {@link OpenGenericService} of its raw class is closed for it and kept for later lookups.
+     *
+     * @param type the closed type of the service to retrieve the registration for
+     * @return the registration for the service of the given type, or null if the service is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     */
+    public Service<?> getRegistration(Type type) {
+        if(type instanceof Class<?> clazz) return getRegistration(clazz);
+        var key = GenericTypes.canonicalize(type);
+        if(key instanceof Class<?> clazz) return getRegistration(clazz);
+        var service = genericRegistrations.get(key);
+        if(service != null) return service;
+        if(parent != null && !shadowed.contains(key)) {
+            var inherited = parent.findGenericRegistration(key);
+            if(inherited != null && (inherited = inherit(inherited)) != null) {
+                var existing = genericRegistrations.putIfAbsent(key, inherited);
+                return existing != null ? existing : inherited;
+            }
+        }
+        return closeOpenGeneric((ParameterizedType) key);
     }
 
     /**
-     * Computes the order in which the services should be loaded. This is done by computing a topological sort of the
-     * services. The order is computed by sorting the services by their dependencies. It will only work on services
-     * that have a constructor (i.e. are not factories or injection-only services).
+     * Closes the open generic registration of the raw class of the given type, and adds the closed service to the registry.<br>
+     * Closing is rare, so it is serialised on the registry. Linking the service may close further types, all of them are linked
+     * before they are published with the next ids, so other threads never see a service without its dependencies.
+     */
+    private synchronized Service<?> closeOpenGeneric(ParameterizedType type) {
+        var service = genericRegistrations.get(type);
+        // Types that depend on each other are closed again while they are linked, they find the service that is being linked
+        if(service == null) service = closing.get(type);
+        if(service != null) return service;
+        var openGeneric = openGenerics.get((Class<?>) type.getRawType());
+        if(openGeneric == null) return null;
+        service = openGeneric.close(type);
+        if(service == null) return null;
+
+        var outermost = closing.isEmpty();
+        service.setId(services.length + closing.size());
+        service.setResolutionListener(listener);
+        closing.put(type, service);
+        try {
+            service.link(this);
+        } catch (RuntimeException | Error e) {
+            if(outermost) closing.clear();
+            throw e;
+        }
+        if(outermost) publishClosed();
+        return service;
+    }
+
+    private void publishClosed() {
+        var services = Arrays.copyOf(this.services, this.services.length + closing.size());
+        for (Service<?> service : closing.values()) {
+            services[service.getId()] = service;
+        }
+        this.services = services;
+        genericRegistrations.putAll(closing);
+        closedTypes.addAll(closing.keySet());
+        closing.clear();
+    }
+
+    /**
+     * Retrieves the registration for the service of the given type that was registered with the given key.<br>
+     * The type is looked up without hashing, small numbers of keys are compared directly and larger ones are looked up in a hash map.
+     *
+     * @param type the type of the service to retrieve the registration for
+     * @param key the key of the service
+     * @param <T> the type of the service to retrieve the registration for
+     * @return the registration, or null if no service of the type is registered with the key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Service<T> getKeyedRegistration(Class<T> type, Object key) {
+        return (Service<T>) keyedLookup.get(type).get(key);
+    }
+
+    /**
+     * Retrieves the registration for the service of the given type, which may be a parameterized type, that was registered with the given key.<br>
+     * Open generic services are never keyed.
+     *
+     * @param type the closed type of the service to retrieve the registration for
+     * @param key the key of the service
+     * @return the registration, or null if no service of the type is registered with the key
+     * @throws IllegalArgumentException if the type is not closed
+     */
+    public Service<?> getKeyedRegistration(Type type, Object key) {
+        if(type instanceof Class<?> clazz) return getKeyedRegistration(clazz, key);
+        return getKeyedRegistrations(type).get(key);
+    }
+
+    /**
+     * Retrieves the registration a {@link org.di4j.di4j.annotations.ServiceKey} parameter of the given type is injected with.<br>
+     * The key of the annotation is a string, so it matches a registration with the same key, or else the first registration whose key
+     * has the same {@link String#valueOf(Object) string value}, for example an enum constant.
+     *
+     * @param type the type of the parameter, which may be a closed parameterized type
+     * @param key the key of the annotation
+     * @return the registration, or null if no service of the type is registered with a matching key
+     */
+    Service<?> getInjectedKeyedRegistration(Type type, Object key) {
+        var registrations = getKeyedRegistrations(type);
+        var service = registrations.get(key);
+        return service != null ? service : registrations.getByName(String.valueOf(key));
+    }
+
+    private KeyedRegistrations getKeyedRegistrations(Type type) {
+        if(type instanceof Class<?> clazz) return keyedLookup.get(clazz);
+        var canonical = GenericTypes.canonicalize(type);
+        var registrations = findGenericKeyed(canonical);
+        return registrations != null ? registrations : KeyedRegistrations.EMPTY;
+    }
+
+    /**
+     * Retrieves every registration of the given type, in registration order.
+     *
+     * @param type the type of the services
+     * @param <T> the type of the services
+     * @return the multi-binding of the type, without registrations if the type is not registered
+     */
+    @SuppressWarnings("unchecked")
+    public <T> MultiBinding<T> getMultiBinding(Class<T> type) {
+        return (MultiBinding<T>) bindingLookup.get(type);
+    }
+
+    /**
+     * Retrieves every registration of the given type, which may be a parameterized type, in registration order.<br>
+     * If no service is registered as a parameterized type but an {@link OpenGenericService} can be closed for it, the binding holds the closed service.
+     *
+     * @param type the closed type of the services
+     * @return the multi-binding of the type, without registrations if the type is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     */
+    public MultiBinding<?> getMultiBinding(Type type) {
+        if(type instanceof Class<?> clazz) return getMultiBinding(clazz);
+        var key = GenericTypes.canonicalize(type);
+        if(key instanceof Class<?> clazz) return getMultiBinding(clazz);
+        var binding = genericBindings.get(key);
+        if(binding != null) return binding;
+        if(parent != null && !shadowed.contains(key)) {
+            var inherited = parent.findGenericBinding(key);
+            if(inherited != null && (binding = inherit(inherited)) != null) {
+                var existing = genericBindings.putIfAbsent(key, binding);
+                return existing != null ? existing : binding;
+            }
+        }
+
+        // Not computed in the map, closing an open generic links services that may look up other bindings
+        var closed = closeOpenGeneric((ParameterizedType) key);
+        binding = new MultiBinding<>(GenericTypes.getRawType(key), closed != null ? new Service<?>[] { closed } : new Service<?>[0]);
+        var existing = genericBindings.putIfAbsent(key, binding);
+        return existing != null ? existing : binding;
+    }
+
+    /**
+     * Sets the listener that is notified when a service of this registry is resolved, or null to remove it.<br>
+     * The listener should be set before services are resolved, resolutions running on other threads may not see the change immediately.
+     *
+     * @param listener the listener to notify
+     */
+    public synchronized void setResolutionListener(ResolutionListener listener) {
+        this.listener = listener;
+        for (Service<?> service : services) {
+            // The services shared with the parent keep the listener of the parent
+            if(service != null && !isInherited(service)) service.setResolutionListener(listener);
+        }
+    }
+
+    /**
+     * Returns the listener that is notified when a service of this registry is resolved.
+     *
+     * @return the listener, or null if no listener is set
+     */
+    public ResolutionListener getResolutionListener() {
+        return listener;
+    }
+
+    /**
+     * Sets whether scopes should also close the {@link AutoCloseable} transient and injection-only instances they create.<br>
+     * Scoped instances are always closed with their scope.
+     *
+     * @param tracking true to close transient instances with their scope, false otherwise
+     */
+    public void setTrackingTransientDisposables(boolean tracking) {
+        this.trackingTransientDisposables = tracking;
+    }
+
+    /**
+     * Returns whether scopes also close the {@link AutoCloseable} transient and injection-only instances they create.
+     *
+     * @return true if transient instances are closed with their scope, false otherwise
+     */
+    public boolean isTrackingTransientDisposables() {
+        return trackingTransientDisposables;
+    }
+
+    /**
+     * Retrieves the registration with the given id.
+     *
+     * @param id the id of the registration, see {@link Service#getId()}
+     * @return the registration with the given id, or null if the registration was dropped by {@link #replace(List, List)}
+     */
+    public Service<?> getRegistration(int id) {
+        return services[id];
+    }
+
+    /**
+     * Returns the number of registrations in the registry. Every registration has an id below this number.<br>
+     * The number grows when an open generic service is closed for a type that was not requested before.
+     *
+     * @return the number of registrations in the registry
+     */
+    public int size() {
+        return services.length;
+    }
+
+    /**
+     * Computes the order in which the services should be loaded. This is a topological sort of the services, every
+     * service comes after the services it depends on. It will only work on services whose dependencies are known, that is
+     * services that have a constructor and factory services that declare their dependencies.
      * @return The list of services in the order they should be loaded
+     * @throws CircularDependencyException if the services depend on each other in a cycle
      */
     public List<Service<?>> getLoadOrder() {
-        Map<Service<?>, Integer> services = new HashMap<>();
-        for(Service<?> service : this.services.values()) {
-            if(service.hasConstructor())
-                services.put(service, 0);
-        }
-
-        for (int i = 0; i < 500; i++) {
-            var changesInThisIteration = false;
-            // Loop through all services, and set the integer in the map of the child service to the current level + 1
-            for (Map.Entry<Service<?>, Integer> entry : services.entrySet()) {
-                var oldValue = entry.getValue();
-                for (Class<?> dependency : entry.getKey().getRequiredServices()) {
-                    Service<?> childService = getRegistration(dependency);
-                    if (childService != null) {
-                        var newValue = Math.min(oldValue, services.get(childService) - 1);
-                        if(oldValue != newValue) {
-                            changesInThisIteration = true;
-                            oldValue = newValue;
-                            services.put(entry.getKey(), newValue);
-                        }
-                    }
+        var order = new ArrayList<Service<?>>();
+        getLoadLevels().forEach(order::addAll);
+        return order;
+    }
+
+    /**
+     * Groups the services by their dependency level. The first group contains the services without dependencies, every
+     * following group only depends on services in the groups before it, so the services within a group can be loaded in parallel.
+     * Just like {@link #getLoadOrder()} it will only work on services whose dependencies are known.<br>
+     * The levels are computed with Kahn's algorithm in time linear to the number of services and dependencies, unless they
+     * were restored from a {@link ServiceGraphSnapshot}.
+     * @return The services grouped by their dependency level, in the order the groups should be loaded
+     * @throws CircularDependencyException if the services depend on each other in a cycle
+     */
+    public List<List<Service<?>>> getLoadLevels() {
+        var levels = loadLevels;
+        return levels != null ? levels : computeLoadLevels();
+    }
+
+    /**
+     * Sets load levels that were computed before, for example by a {@link ServiceGraphSnapshot} of the same registrations.
+     *
+     * @param levels the services grouped by their dependency level
+     */
+    void setLoadLevels(List<List<Service<?>>> levels) {
+        this.loadLevels = levels;
+    }
+
+    private List<List<Service<?>>> computeLoadLevels() {
+        var services = this.services;
+        int count = services.length;
+        var inDegree = new int[count];
+        var dependentOffsets = new int[count + 1];
+        int included = 0;
+
+        // Count the dependencies of every service and the dependents of every dependency
+        for (Service<?> service : services) {
+            if(service == null || !service.hasKnownDependencies()) continue;
+            included++;
+            for (Service<?> dependency : linkedDependencies(service)) {
+                if(dependency == null || !dependency.hasKnownDependencies()) continue;
+                inDegree[service.getId()]++;
+                dependentOffsets[dependency.getId() + 1]++;
+            }
+        }
+
+        // Store the dependents of every service in one flat array, the dependents of service i start at dependentOffsets[i]
+        for (int i = 0; i < count; i++) {
+            dependentOffsets[i + 1] += dependentOffsets[i];
+        }
+        var dependents = new int[dependentOffsets[count]];
+        var fill = Arrays.copyOf(dependentOffsets, count);
+        for (Service<?> service : services) {
+            if(service == null || !service.hasKnownDependencies()) continue;
+            for (Service<?> dependency : linkedDependencies(service)) {
+                if(dependency == null || !dependency.hasKnownDependencies()) continue;
+                dependents[fill[dependency.getId()]++] = service.getId();
+            }
+        }
+
+        var current = new ArrayList<Service<?>>();
+        for (Service<?> service : services) {
+            if(service != null && service.hasKnownDependencies() && inDegree[service.getId()] == 0) current.add(service);
+        }
+
+        var levels = new ArrayList<List<Service<?>>>();
+        int loaded = 0;
+        while (!current.isEmpty()) {
+            levels.add(List.copyOf(current));
+            loaded += current.size();
+
+            var next = new ArrayList<Service<?>>();
+            for (Service<?> service : current) {
+                int id = service.getId();
+                for (int i = dependentOffsets[id]; i < dependentOffsets[id + 1]; i++) {
+                    if(--inDegree[dependents[i]] == 0) next.add(services[dependents[i]]);
+                }
+            }
+            current = next;
+        }
+
+        if(loaded != included) throw new CircularDependencyException(findCycle(services, inDegree));
+        return List.copyOf(levels);
+    }
+
+    /**
+     * Finds a cycle among the services that could not be loaded. Every such service still has a dependency that could not
+     * be loaded, so following those dependencies must eventually visit a service twice.
+     */
+    private List<Class<?>> findCycle(Service<?>[] services, int[] inDegree) {
+        Service<?> start = null;
+        for (Service<?> service : services) {
+            if(service != null && service.hasKnownDependencies() && inDegree[service.getId()] > 0) {
+                start = service;
+                break;
+            }
+        }
+
+        var position = new HashMap<Service<?>, Integer>();
+        var path = new ArrayList<Service<?>>();
+        var current = start;
+        while (!position.containsKey(current)) {
+            position.put(current, path.size());
+            path.add(current);
+            for (Service<?> dependency : linkedDependencies(current)) {
+                if(dependency != null && dependency.hasKnownDependencies() && inDegree[dependency.getId()] > 0) {
+                    current = dependency;
+                    break;
                 }
             }
-            if(!changesInThisIteration) break;
         }
 
-        // Sort the services by their level
-        return services.keySet().stream().sorted((a,b) -> services.get(b) - services.get(a)).toList();
+        var cycle = new ArrayList<Class<?>>();
+        for (Service<?> service : path.subList(position.get(current), path.size())) {
+            cycle.add(service.getType());
+        }
+        cycle.add(current.getType());
+        return cycle;
+    }
+
+    /**
+     * The keyed registrations of a single type. Most types only have a handful of keys, those are kept in an array and compared
+     * directly, so routing a lookup does not hash the key.
+     */
+    private static final class KeyedRegistrations {
+
+        private static final int MAX_SCANNED_KEYS = 8;
+        private static final KeyedRegistrations EMPTY = new KeyedRegistrations(Map.of());
+
+        private final Object[] keys;
+        private final Service<?>[] services;
+        private final Map<Object, Service<?>> index;
+
+        private KeyedRegistrations(Map<Object, Service<?>> registrations) {
+            this.keys = registrations.keySet().toArray();
+            this.services = registrations.values().toArray(Service<?>[]::new);
+            this.index = keys.length > MAX_SCANNED_KEYS ? new HashMap<>(registrations) : null;
+        }
+
+        private KeyedRegistrations(Object[] keys, Service<?>[] services) {
+            this.keys = keys;
+            this.services = services;
+            this.index = keys.length > MAX_SCANNED_KEYS ? toMap() : null;
+        }
+
+        private Map<Object, Service<?>> toMap() {
+            var map = new LinkedHashMap<Object, Service<?>>();
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], services[i]);
+            }
+            return map;
+        }
+
+        /**
+         * Returns the registrations as they are seen by the given overlay, whose copies replace the services of the parent.
+         */
+        private KeyedRegistrations inherit(ServiceRegistry overlay) {
+            var inherited = new Service<?>[services.length];
+            var changed = false;
+            for (int i = 0; i < inherited.length; i++) {
+                inherited[i] = overlay.inherit(services[i]);
+                changed |= inherited[i] != services[i];
+            }
+            return changed ? new KeyedRegistrations(keys, inherited) : this;
+        }
+
+        /**
+         * Returns these registrations with the given ones added, replacing registrations with the same key.
+         */
+        private KeyedRegistrations with(Map<Object, Service<?>> registrations) {
+            var map = toMap();
+            map.putAll(registrations);
+            return new KeyedRegistrations(map);
+        }
+
+        private Service<?> get(Object key) {
+            if(index != null) return index.get(key);
+            for (int i = 0; i < keys.length; i++) {
+                if(keys[i] == key || keys[i].equals(key)) return services[i];
+            }
+            return null;
+        }
+
+        private Service<?> getByName(String name) {
+            for (int i = 0; i < keys.length; i++) {
+                if(String.valueOf(keys[i]).equals(name)) return services[i];
+            }
+            return null;
+        }
+    }
+
+    private static Service<?>[] linkedDependencies(Service<?> service) {
+        var dependencies = service.getLinkedDependencies();
+        return dependencies != null ? dependencies : new Service<?>[0];
     }
 
-}
\ No newline at end of file
+}
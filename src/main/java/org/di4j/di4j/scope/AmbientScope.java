@@ -0,0 +1,114 @@
+package org.di4j.di4j.scope;
+
+import org.di4j.di4j.RootServiceProvider;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The `AmbientScope` class binds a {@link ServiceScope} to the current thread for the duration of a task.<br>
+ * While a scope is bound, looking up a scoped or transient service on the {@link RootServiceProvider} of that scope resolves it
+ * in the bound scope, so the scope does not have to be passed through every layer of a request.<br>
+ * Bindings are strictly nested: the previous binding is restored when the task completes, and nothing stays bound to the thread
+ * afterwards, which keeps the binding safe for virtual threads and pooled threads alike.<br>
+ * Bindings are not inherited by other threads, tasks handed to an executor keep the scope by wrapping them with {@link #wrap(Runnable)}
+ * or {@link #wrap(Callable)}.<br>
+ */
+public final class AmbientScope {
+
+    private static final ThreadLocal<ServiceScope> CURRENT = new ThreadLocal<>();
+
+    private AmbientScope() {
+    }
+
+    /**
+     * Runs the task with the given scope bound to the current thread.
+     *
+     * @param scope the scope to bind
+     * @param task the task to run
+     */
+    public static void run(ServiceScope scope, Runnable task) {
+        var previous = bind(scope);
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Calls the task with the given scope bound to the current thread.
+     *
+     * @param scope the scope to bind
+     * @param task the task to call
+     * @param <R> the result type of the task
+     * @return the result of the task
+     * @throws Exception if the task throws an exception
+     */
+    public static <R> R call(ServiceScope scope, Callable<R> task) throws Exception {
+        var previous = bind(scope);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Wraps the task so that it runs with the scope that is bound when this method is called, on whichever thread it runs on.
+     *
+     * @param task the task to wrap
+     * @return the wrapped task, or the task itself if no scope is bound
+     */
+    public static Runnable wrap(Runnable task) {
+        var scope = CURRENT.get();
+        if(scope == null) return task;
+        return () -> run(scope, task);
+    }
+
+    /**
+     * Wraps the task so that it is called with the scope that is bound when this method is called, on whichever thread it runs on.
+     *
+     * @param task the task to wrap
+     * @param <R> the result type of the task
+     * @return the wrapped task, or the task itself if no scope is bound
+     */
+    public static <R> Callable<R> wrap(Callable<R> task) {
+        var scope = CURRENT.get();
+        if(scope == null) return task;
+        return () -> call(scope, task);
+    }
+
+    /**
+     * Returns the scope bound to the current thread.
+     *
+     * @return the bound scope, or null if no scope is bound
+     */
+    public static ServiceScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the scope bound to the current thread if it was created by the given root service provider.<br>
+     * Scopes of other providers are ignored, so binding a scope never leaks its instances into an unrelated container.
+     *
+     * @param root the root service provider the scope must belong to
+     * @return the bound scope, or null if no scope of the given provider is bound
+     */
+    public static ServiceScope current(RootServiceProvider root) {
+        var scope = CURRENT.get();
+        return scope != null && scope.rootScope == root ? scope : null;
+    }
+
+    private static ServiceScope bind(ServiceScope scope) {
+        if(scope == null) throw new IllegalArgumentException("The scope to bind must not be null");
+        var previous = CURRENT.get();
+        CURRENT.set(scope);
+        return previous;
+    }
+
+    private static void restore(ServiceScope previous) {
+        // Remove the entry instead of storing null, so no thread local map entry outlives the binding
+        if(previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+}
@@ -0,0 +1,185 @@
+package org.di4j.di4j.scope;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.exceptions.CircularDependencyException;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
+import org.di4j.di4j.registry.Service;
+import org.di4j.di4j.registry.ServiceRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The `ConcurrentServiceScope` class is a {@link ServiceScope} that can be shared by several threads, for example by the
+ * subtasks of a single request.<br>
+ * Every scoped service is created exactly once per scope: the first thread that needs an instance claims the slot of the service
+ * and creates it, other threads resolving the same service wait for that instance only, while services in other slots are created in parallel.
+ * A thread that would wait for an instance that is, through other waiting threads, waiting for the thread itself fails with a
+ * {@link CircularDependencyException} instead.<br>
+ * Once an instance is published, resolving it is a single volatile read. Services added to the registry after the scope was created,
+ * by closing an open generic service, are kept in a concurrent map next to the slots.<br>
+ * {@link #reset()} and {@link #close()} must not run while other threads still resolve services from the scope.<br>
+ */
+public class ConcurrentServiceScope extends ServiceScope {
+
+    // The slot every thread is waiting for, so a thread can tell whether the instance it waits for waits for itself
+    private static final ConcurrentHashMap<Thread, Pending> waiting = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<Object> slots;
+    private final ConcurrentHashMap<Integer, Object> overflow = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new concurrent service scope with the given root scope and service registry.
+     *
+     * @param rootScope the root scope of the new scope
+     * @param registry the service registry to use for the new scope
+     */
+    public ConcurrentServiceScope(RootServiceProvider rootScope, ServiceRegistry registry) {
+        super(rootScope, registry);
+        this.slots = new AtomicReferenceArray<>(registry.size());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    <T> T getOrCreateScoped(Service<T> service, Class<?> context, int depth) {
+        var id = service.getId();
+        var value = get(id);
+        if(value != null && !(value instanceof Pending)) {
+            onCacheHit(service, depth);
+            return (T) value;
+        }
+
+        if(value == null) {
+            var pending = new Pending(service);
+            if(claim(id, pending)) return create(service, context, depth, pending);
+            value = get(id);
+        }
+        if(value instanceof Pending pending) return (T) pending.await();
+
+        onCacheHit(service, depth);
+        return (T) value;
+    }
+
+    private <T> T create(Service<T> service, Class<?> context, int depth, Pending pending) {
+        var id = service.getId();
+        T instance;
+        try {
+            instance = service.create(this, context, depth);
+        } catch (RuntimeException | Error e) {
+            // Free the slot so the service can be created again, and fail the threads waiting for it
+            set(id, null);
+            pending.instance.completeExceptionally(e);
+            throw e;
+        }
+        set(id, instance);
+        pending.instance.complete(instance);
+        if(instance instanceof AutoCloseable closeable) track(closeable);
+        return instance;
+    }
+
+    private Object get(int id) {
+        return id < slots.length() ? slots.get(id) : overflow.get(id);
+    }
+
+    private boolean claim(int id, Pending pending) {
+        return id < slots.length() ? slots.compareAndSet(id, null, pending) : overflow.putIfAbsent(id, pending) == null;
+    }
+
+    private void set(int id, Object value) {
+        if(id < slots.length()) slots.set(id, value);
+        else if(value == null) overflow.remove(id);
+        else overflow.put(id, value);
+    }
+
+    @Override
+    void track(AutoCloseable closeable) {
+        synchronized (slots) {
+            super.track(closeable);
+        }
+    }
+
+    @Override
+    void trackPooled(Service<?> service, Object instance) {
+        synchronized (slots) {
+            super.trackPooled(service, instance);
+        }
+    }
+
+    @Override
+    boolean untrack(Object instance) {
+        synchronized (slots) {
+            return super.untrack(instance);
+        }
+    }
+
+    /**
+     * Drops every scoped instance of this scope and disposes the tracked instances, see {@link ServiceScope#reset()}.
+     *
+     * @throws ScopeDisposalException if one or more instances could not be closed, after all instances have been dropped
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        overflow.clear();
+        synchronized (slots) {
+            super.reset();
+        }
+    }
+
+    /**
+     * Marks a slot whose instance is being created by another thread.
+     */
+    private static final class Pending {
+
+        private final Service<?> service;
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<Object> instance = new CompletableFuture<>();
+
+        private Pending(Service<?> service) {
+            this.service = service;
+        }
+
+        private Object await() {
+            var thread = Thread.currentThread();
+            // The creating thread needs the service it is creating, waiting would never finish
+            if(owner == thread) throw new CircularDependencyException(List.of(service.getType()));
+
+            // The wait is registered before the other threads are checked, so of two threads that wait for each other at least one sees the cycle
+            waiting.put(thread, this);
+            try {
+                var cycle = findCycle(thread);
+                if(cycle != null) throw new CircularDependencyException(cycle);
+                return instance.join();
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof RuntimeException cause) throw cause;
+                if(e.getCause() instanceof Error cause) throw cause;
+                throw e;
+            } finally {
+                waiting.remove(thread);
+            }
+        }
+
+        /**
+         * Follows the threads that create the awaited instances, and the instances those threads wait for in turn.
+         *
+         * @return the awaited services if the chain leads back to the given thread, or null if it does not
+         */
+        private List<Class<?>> findCycle(Thread thread) {
+            var path = new ArrayList<Class<?>>();
+            var pending = this;
+            // Threads that wait for each other without the given thread would be followed forever, no chain is longer than the waiting threads
+            for (int i = waiting.size(); pending != null && i >= 0; i--) {
+                path.add(pending.service.getType());
+                if(pending.owner == thread) return path;
+                pending = waiting.get(pending.owner);
+            }
+            return null;
+        }
+    }
+}
@@ -2,27 +2,42 @@ package org.di4j.di4j.scope;
 
 import org.di4j.di4j.ServiceProvider;
 import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.exceptions.CircularDependencyException;
 import org.di4j.di4j.exceptions.ClassNotAssignableException;
 import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
 import org.di4j.di4j.exceptions.InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException;
 import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
 import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
 import org.di4j.di4j.registry.Service;
 import org.di4j.di4j.registry.ServiceRegistry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The `ServiceScope` class represents a scope for services that can be provided by a service provider.<br>
- * It contains a map of scoped services and provides methods to retrieve a service instance from the scope.<br>
+ * It stores scoped instances in an array indexed by the id of their registration and provides methods to retrieve a service instance from the scope.<br>
+ * The array is only allocated when the first scoped service is resolved, so scopes that never resolve a scoped service stay small.<br>
+ * Scoped instances that implement {@link AutoCloseable} (and optionally transient ones, see {@link ServiceRegistry#setTrackingTransientDisposables(boolean)})
+ * are closed in reverse creation order when the scope is closed. Instances of pooled services are handed back to their pool at the same point.<br>
  */
-public class ServiceScope extends ServiceProvider {
+public class ServiceScope extends ServiceProvider implements AutoCloseable {
 
-    private Map<Class<?>, Object> scopedServices = new HashMap<>();
+    private Object[] scopedServices;
+    private ArrayList<AutoCloseable> disposables;
+    // The pooled instances this scope took out of their pools, next to the registrations they go back to
+    private Object[] pooledInstances;
+    private Service<?>[] pooledServices;
+    private int pooledCount;
 
     RootServiceProvider rootScope;
     ServiceRegistry registry;
+    private final ServiceScopePool pool;
+    // Set when a pooled scope is handed back, so releasing it again does not put it into the pool twice
+    boolean released;
 
     
     /**
@@ -32,8 +47,13 @@ public class ServiceScope extends ServiceProvider {
      * @param registry the service registry to use for the new scope
      */
     public ServiceScope(RootServiceProvider rootScope, ServiceRegistry registry) {
+        this(rootScope, registry, null);
+    }
+
+    ServiceScope(RootServiceProvider rootScope, ServiceRegistry registry, ServiceScopePool pool) {
         this.rootScope = rootScope;
         this.registry = registry;
+        this.pool = pool;
     }
 
     /**
@@ -51,39 +71,298 @@ public class ServiceScope extends ServiceProvider {
      */
     @Override
     public <T> T getService(Class<T> type, Class<?> context) {
-        // Check to see if the scope already has an instance for this
-        if(scopedServices.containsKey(type)) {
-            return type.cast(scopedServices.get(type));
-        }
-
         // Get the service registration
-        Service<?> service = registry.getRegistration(type);
+        Service<T> service = registry.getRegistration(type);
         if(service == null) return null;
-        // If the service is a singleton, get the instance from the singleton
-        if(service.isSingleton()) return rootScope.getService(type, context);
+        return resolve(service, context);
+    }
 
-        // If the service is a transient service, create a new instance
-        if(service.isTransient()) return registry.getService(type, this, context);
+    /**
+     * Retrieves a service instance of the given type, which may be a parameterized type, from the scope using the given context.
+     *
+     * @param type the closed type of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @return the service instance of the given type, or null if the service is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    @Override
+    public Object getService(Type type, Class<?> context) {
+        var service = registry.getRegistration(type);
+        if(service == null) return null;
+        return resolve(service, context);
+    }
 
-        // If the service is an injection only service, create a new instance
-        if(service.isInjectionOnly()) return registry.getService(type, this, context);
+    /**
+     * Retrieves an instance of the service of the given type that was registered with the given key from the scope.
+     *
+     * @param type the type of the service to retrieve
+     * @param key the key the service was registered with
+     * @param <T> the type of the service to retrieve
+     * @return the service instance, or null if no service of the type is registered with the key
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public <T> T getKeyedService(Class<T> type, Object key) {
+        Service<T> service = registry.getKeyedRegistration(type, key);
+        if(service == null) return null;
+        return resolve(service, null);
+    }
+
+    /**
+     * Retrieves an instance of every service registered as the given type from the scope, in registration order.
+     *
+     * @param type the type of the services to retrieve
+     * @param <T> the type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public <T> List<T> getServices(Class<T> type) {
+        return registry.getMultiBinding(type).resolveList(this, null, 0);
+    }
+
+    /**
+     * Retrieves an instance of every service registered as the given type, which may be a parameterized type, from the scope, in registration order.
+     *
+     * @param type the closed type of the services to retrieve
+     * @return an immutable list of the service instances, empty if the type is not registered
+     * @throws IllegalArgumentException if the type is not closed
+     * @throws FailedToInstantiateServiceException if a service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if a service registration is invalid
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     */
+    @Override
+    public List<?> getServices(Type type) {
+        return registry.getMultiBinding(type).resolveList(this, null, 0);
+    }
+
+    /**
+     * Retrieves a service instance for the given registration from the scope using the given context.
+     *
+     * @param service the registration of the service to retrieve
+     * @param context the context to use to retrieve the service instance
+     * @param depth the number of services that are being created on the current resolution path
+     * @param <T> the type of the service to retrieve
+     * @return the service instance for the given registration
+     * @throws FailedToInstantiateServiceException if the service instance could not be instantiated
+     * @throws InvalidServiceRegistrationException if the service registration is invalid
+     * @throws MissingServiceException if a service instance cannot be retrieved, this is thrown when fetching child services
+     * @throws CircularDependencyException if the service depends on itself
+     * @throws ClassNotAssignableException if the created instance for a service cannot be assigned to the expected class type
+     * @throws InjectionOnlyFactoryCannotBeUsedForNonInjectionServicesException if an injection-only factory is used without an injection target
+     */
+    @Override
+    public <T> T resolve(Service<T> service, Class<?> context, int depth) {
+        var type = service.getType();
+        var lifetime = service.getLifetime();
+        if(lifetime == null) throw new InvalidServiceRegistrationException("The service " + type.getName() + " did not have a valid registration, must be either a singleton, transient, scoped or injection only service.");
 
-        // If the service is a scoped service, create a scoped instance and save it.
-        if(service.isScoped()) {
-            Object instance = registry.getService(type, this, context);
-            if(instance == null) {
-                return null;
+        switch (lifetime) {
+            // If the service is a singleton, get the instance from the root scope
+            case SINGLETON -> {
+                return rootScope.resolve(service, context, depth);
+            }
+            // If the service is a scoped service, create a scoped instance and save it.
+            case SCOPED -> {
+                return getOrCreateScoped(service, context, depth);
+            }
+            // If the service is pooled, take an instance from the pool and hand it back when the scope ends
+            case POOLED -> {
+                T instance = service.acquire(this, context, depth);
+                trackPooled(service, instance);
+                return instance;
+            }
+            // Transient and injection only services create a new instance every time
+            default -> {
+                T instance = service.create(this, context, depth);
+                if(instance instanceof AutoCloseable closeable && registry.isTrackingTransientDisposables()) track(closeable);
+                return instance;
             }
-            scopedServices.put(type, instance);
-            return type.cast(instance);
         }
+    }
 
-        // If the service is a injection only service
+    /**
+     * Returns the instance of the scoped service in this scope, creating it on first use.
+     *
+     * @param service the registration of the scoped service
+     * @param context the class the service is injected into
+     * @param depth the number of services that are being created on the current resolution path
+     * @param <T> the type of the service
+     * @return the instance of the service in this scope
+     */
+    <T> T getOrCreateScoped(Service<T> service, Class<?> context, int depth) {
+        var id = service.getId();
+        var instance = (T) scopedInstances(id)[id];
+        if(instance == null) {
+            instance = service.create(this, context, depth);
+            // Creating the instance may have closed an open generic service and grown the array, so it is read again
+            scopedInstances(id)[id] = instance;
+            if(instance instanceof AutoCloseable closeable) track(closeable);
+        } else {
+            onCacheHit(service, depth);
+        }
+        return instance;
+    }
 
-        throw new InvalidServiceRegistrationException("The service " + type.getName() + " did not have a valid registration, must be either a singleton, transient, scoped or injection only service.");
+    private Object[] scopedInstances(int id) {
+        var instances = scopedServices;
+        if(instances == null || id >= instances.length) {
+            // Closing an open generic service or updating the provider adds registrations after the array was allocated
+            var size = Math.max(registry.size(), id + 1);
+            instances = instances == null ? new Object[size] : Arrays.copyOf(instances, size);
+            scopedServices = instances;
+        }
+        return instances;
+    }
+
+    void onCacheHit(Service<?> service, int depth) {
+        var listener = registry.getResolutionListener();
+        if(listener != null) listener.onCacheHit(service, depth);
+    }
+
+    void track(AutoCloseable closeable) {
+        var tracked = disposables;
+        if(tracked == null) {
+            tracked = new ArrayList<>();
+            disposables = tracked;
+        }
+        tracked.add(closeable);
+    }
+
+    void trackPooled(Service<?> service, Object instance) {
+        if(pooledInstances == null) {
+            pooledInstances = new Object[4];
+            pooledServices = new Service<?>[4];
+        } else if(pooledCount == pooledInstances.length) {
+            pooledInstances = Arrays.copyOf(pooledInstances, pooledCount * 2);
+            pooledServices = Arrays.copyOf(pooledServices, pooledCount * 2);
+        }
+        pooledInstances[pooledCount] = instance;
+        pooledServices[pooledCount] = service;
+        pooledCount++;
+    }
+
+    /**
+     * Hands an instance of a pooled service back to its pool before the scope ends, see {@link ServiceProvider#releaseService(Class, Object)}.<br>
+     * The scope stops tracking the instance, so it is not released a second time when the scope is reset or closed.
+     * Nothing happens if the instance was not taken out of the pool by this scope, or was already released.
+     *
+     * @param type the type the service was resolved as
+     * @param instance the instance to release
+     * @param <T> the type of the service
+     */
+    @Override
+    public <T> void releaseService(Class<T> type, T instance) {
+        Service<T> service = registry.getRegistration(type);
+        if(service == null || !service.isPooled()) return;
+        if(untrack(instance)) service.release(instance);
+    }
+
+    /**
+     * Stops tracking the given pooled instance.
+     *
+     * @return true if this scope owned the instance, false if it did not take the instance out of its pool or already released it
+     */
+    boolean untrack(Object instance) {
+        // Pooled instances are usually released in reverse order, so the search starts at the end
+        for (int i = pooledCount - 1; i >= 0; i--) {
+            if(pooledInstances[i] == instance) {
+                int moved = pooledCount - i - 1;
+                System.arraycopy(pooledInstances, i + 1, pooledInstances, i, moved);
+                System.arraycopy(pooledServices, i + 1, pooledServices, i, moved);
+                pooledCount--;
+                pooledInstances[pooledCount] = null;
+                pooledServices[pooledCount] = null;
+                return true;
+            }
+        }
+        return false;
     }
 
     public ServiceScope getScope() {
         return rootScope.getScope(); // Create a new root scope
     }
+
+    /**
+     * Disposes and drops every scoped instance of this scope, so the scope can be used for a new request.<br>
+     * Tracked instances are closed in reverse creation order, every instance is closed even if closing another one fails.
+     * Pooled instances are handed back to their pools afterwards, so the closed instances could still use them.<br>
+     * The storage of the scope is kept, so a reused scope does not allocate it again.
+     *
+     * @throws ScopeDisposalException if one or more instances could not be closed or reset, after all instances have been dropped
+     */
+    @SuppressWarnings("unchecked")
+    public void reset() {
+        var instances = scopedServices;
+        if(instances != null) Arrays.fill(instances, null);
+
+        var tracked = disposables;
+        if((tracked == null || tracked.isEmpty()) && pooledCount == 0) return;
+
+        ScopeDisposalException failure = null;
+        for (int i = tracked != null ? tracked.size() - 1 : -1; i >= 0; i--) {
+            try {
+                tracked.get(i).close();
+            } catch (Exception e) {
+                if(failure == null) failure = new ScopeDisposalException("Could not dispose every instance of the scope", e);
+                else failure.addSuppressed(e);
+            }
+        }
+        if(tracked != null) tracked.clear();
+
+        for (int i = pooledCount - 1; i >= 0; i--) {
+            try {
+                ((Service<Object>) pooledServices[i]).release(pooledInstances[i]);
+            } catch (Exception e) {
+                if(failure == null) failure = new ScopeDisposalException("Could not dispose every instance of the scope", e);
+                else failure.addSuppressed(e);
+            }
+            pooledInstances[i] = null;
+            pooledServices[i] = null;
+        }
+        pooledCount = 0;
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * Resets the scope and hands it back to the {@link ServiceScopePool} it was acquired from.<br>
+     * The scope must not be used after it has been released, releasing it again until it is acquired again does nothing.
+     * Scopes that were not acquired from a pool are only reset.
+     *
+     * @throws ScopeDisposalException if one or more instances could not be closed, after the scope was handed back
+     */
+    public void release() {
+        if(pool != null) {
+            if(released) return;
+            released = true;
+        }
+        try {
+            reset();
+        } finally {
+            if(pool != null) pool.release(this);
+        }
+    }
+
+    /**
+     * Closes the scope, disposing its instances in reverse creation order.<br>
+     * Scopes acquired from a {@link ServiceScopePool} are handed back to the pool, see {@link #release()}, so closing them twice does nothing.
+     *
+     * @throws ScopeDisposalException if one or more instances could not be closed
+     */
+    @Override
+    public void close() {
+        release();
+    }
 }
@@ -0,0 +1,51 @@
+package org.di4j.di4j.scope;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.pool.BoundedPool;
+
+/**
+ * The `ServiceScopePool` class reuses {@link ServiceScope} objects for high-rate request scopes.<br>
+ * A scope is taken from the pool with {@link #acquire()} and handed back with {@link ServiceScope#release()}, which drops every
+ * scoped instance of the previous request before the scope is reused. If the pool is full the released scope is discarded.<br>
+ * Scopes always use the current registry of the root scope, a pooled scope created before the registry was updated is switched to the new registry when it is taken out again.<br>
+ */
+public class ServiceScopePool {
+
+    private final RootServiceProvider rootScope;
+    private final BoundedPool<ServiceScope> pool;
+
+    /**
+     * Creates an empty scope pool for the given root scope.
+     *
+     * @param rootScope the root scope of the pooled scopes
+     * @param capacity the maximum number of scopes kept in the pool
+     */
+    public ServiceScopePool(RootServiceProvider rootScope, int capacity) {
+        this.rootScope = rootScope;
+        this.pool = new BoundedPool<>(capacity);
+    }
+
+    /**
+     * Takes a scope out of the pool, or creates a new scope if the pool is empty.<br>
+     * The scope must be handed back with {@link ServiceScope#release()} and must not be used afterwards.
+     *
+     * @return an empty scope
+     */
+    public ServiceScope acquire() {
+        var registry = rootScope.getRegistry();
+        var scope = pool.acquire();
+        if(scope == null) {
+            scope = new ServiceScope(rootScope, registry, this);
+            var listener = registry.getResolutionListener();
+            if(listener != null) listener.onScopeCreated(scope);
+            return scope;
+        }
+        scope.registry = registry;
+        scope.released = false;
+        return scope;
+    }
+
+    boolean release(ServiceScope scope) {
+        return pool.release(scope);
+    }
+}
@@ -1,18 +1,35 @@
 package org.di4j.di4j;
 
 import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.exceptions.CannotUseScopedServiceInRootScopeException;
+import org.di4j.di4j.exceptions.CircularDependencyException;
+import org.di4j.di4j.exceptions.MissingServiceException;
+import org.di4j.di4j.exceptions.FailedToInstantiateServiceException;
+import org.di4j.di4j.exceptions.ResolutionException;
 import org.di4j.di4j.ServiceProvider;
 import org.di4j.di4j.registry.Service;
 import org.di4j.di4j.registry.ServiceRegistry;
 import org.di4j.di4j.scope.ServiceScope;
+import org.di4j.di4j.scope.ServiceScopePool;
 import org.di4j.di4j.services.*;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class RootServiceProviderTests {
 
@@ -67,4 +84,562 @@ public class RootServiceProviderTests {
         assertTrue(TestServiceLevel3.class == loadOrder.get(4).getType() || TestServiceLevel3A.class == loadOrder.get(4).getType());
         assertEquals(TestServiceLevel4.class, loadOrder.get(5).getType());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void canCreateTransientServiceGraph() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addTransient(TestServiceLevel1.class);
+        builder.addTransient(TestServiceLevel2.class);
+        builder.addTransient(TestServiceLevel3.class);
+        builder.addTransient(TestServiceLevel4.class);
+
+        RootServiceProvider rsp = builder.build();
+        TestServiceLevel4 first = rsp.getService(TestServiceLevel4.class);
+        assertNotNull(first);
+        assertNotSame(first, rsp.getService(TestServiceLevel4.class));
+    }
+
+    @Test
+    public void constructorExceptionIsWrapped() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addTransient(TestServiceLevel1.class);
+        builder.addTransient(TestServiceThrowing.class);
+
+        RootServiceProvider rsp = builder.build();
+        FailedToInstantiateServiceException exception = assertThrows(FailedToInstantiateServiceException.class, () -> rsp.getService(TestServiceThrowing.class));
+        assertTrue(exception.getCause().getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void scopedDependenciesAreSharedWithinScope() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addScoped(TestServiceLevel1.class);
+        builder.addScoped(TestServiceLevel2.class);
+        builder.addTransient(TestServiceLevel3.class);
+
+        RootServiceProvider rsp = builder.build();
+        assertThrows(CannotUseScopedServiceInRootScopeException.class, () -> rsp.getService(TestServiceLevel3.class));
+
+        ServiceScope scope = rsp.getScope();
+        TestServiceLevel2 level2 = scope.getService(TestServiceLevel2.class);
+        assertNotNull(scope.getService(TestServiceLevel3.class));
+        assertSame(level2, scope.getService(TestServiceLevel2.class));
+        assertNotSame(level2, rsp.getScope().getService(TestServiceLevel2.class));
+    }
+
+    @Test
+    public void singletonIsCreatedOnceUnderConcurrency() throws Exception {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addSingleton(TestServiceCounting.class);
+        RootServiceProvider rsp = builder.build();
+
+        TestServiceCounting.INSTANCES.set(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TestServiceCounting>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> rsp.getService(TestServiceCounting.class)));
+            }
+            TestServiceCounting first = futures.get(0).get();
+            for (Future<TestServiceCounting> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, TestServiceCounting.INSTANCES.get());
+    }
+
+    @Test
+    public void canWarmUpSingletons() {
+        TestServiceCounting.INSTANCES.set(0);
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addSingleton(TestServiceCounting.class);
+        builder.addTransient(TestServiceLevel2.class);
+        builder.warmUpSingletons();
+
+        RootServiceProvider rsp = builder.build();
+        assertTrue(rsp.getWarmUp().isDone());
+        assertEquals(1, TestServiceCounting.INSTANCES.get());
+        assertNotNull(rsp.getService(TestServiceCounting.class));
+        assertEquals(1, TestServiceCounting.INSTANCES.get());
+    }
+
+    @Test
+    public void loadLevelsIncludeDeclaredFactoryDependencies() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addSingleton(TestServiceLevel2.class, provider -> new TestServiceLevel2(provider.getService(TestServiceLevel1.class)), TestServiceLevel1.class);
+        builder.addSingleton(TestServiceLevel3.class);
+
+        List<List<Service<?>>> levels = builder.build().getRegistry().getLoadLevels();
+        assertEquals(3, levels.size());
+        assertEquals(TestServiceLevel1.class, levels.get(0).get(0).getType());
+        assertEquals(TestServiceLevel2.class, levels.get(1).get(0).getType());
+        assertEquals(TestServiceLevel3.class, levels.get(2).get(0).getType());
+    }
+
+    @Test
+    public void loadOrderReportsCycles() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addSingleton(TestServiceCycleA.class);
+        builder.addSingleton(TestServiceCycleB.class);
+
+        ServiceRegistry registry = builder.build().getRegistry();
+        CircularDependencyException exception = assertThrows(CircularDependencyException.class, registry::getLoadOrder);
+        List<Class<?>> path = exception.getPath();
+        assertEquals(3, path.size());
+        assertEquals(path.get(0), path.get(2));
+        assertTrue(path.contains(TestServiceCycleA.class) && path.contains(TestServiceCycleB.class));
+    }
+
+    @Test
+    public void resolutionReportsDependencyPaths() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceCycleA.class);
+        builder.addTransient(TestServiceCycleB.class);
+        builder.addTransient(TestServiceLevel2.class);
+        builder.addTransient(TestServiceLevel3.class);
+        RootServiceProvider rsp = builder.build();
+
+        CircularDependencyException cycle = assertThrows(CircularDependencyException.class, () -> rsp.getService(TestServiceCycleA.class));
+        assertEquals(List.of(TestServiceCycleA.class, TestServiceCycleB.class, TestServiceCycleA.class), cycle.getPath());
+
+        MissingServiceException missing = assertThrows(MissingServiceException.class, () -> rsp.getService(TestServiceLevel3.class));
+        assertEquals(List.of(TestServiceLevel3.class, TestServiceLevel2.class, TestServiceLevel1.class), missing.getPath());
+        assertTrue(missing.getMessage().contains(TestServiceLevel3.class.getName()));
+    }
+
+    @Test
+    public void resolutionDetectsCyclesThroughFactories() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addTransient(TestServiceCycleA.class, provider -> new TestServiceCycleA(provider.getService(TestServiceCycleB.class)));
+        builder.addSingleton(TestServiceCycleB.class);
+        RootServiceProvider rsp = builder.build();
+
+        CircularDependencyException cycle = assertThrows(CircularDependencyException.class, () -> rsp.getService(TestServiceCycleA.class));
+        assertEquals(List.of(TestServiceCycleA.class, TestServiceCycleB.class, TestServiceCycleA.class), cycle.getPath());
+    }
+
+    @Test
+    public void resolutionDetectsCyclesInLargeRegistries() {
+        // The cycle is reported on the first repeated service, no matter how many services are registered
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.addTransient(TestServiceLevel1.class);
+        }
+        builder.addTransient(TestServiceCycleA.class);
+        builder.addTransient(TestServiceCycleB.class);
+        RootServiceProvider rsp = builder.build();
+
+        CircularDependencyException cycle = assertThrows(CircularDependencyException.class, () -> rsp.getService(TestServiceCycleA.class));
+        assertEquals(List.of(TestServiceCycleA.class, TestServiceCycleB.class, TestServiceCycleA.class), cycle.getPath());
+    }
+
+    @Test
+    public void multiBindingsKeepRegistrationOrder() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addSingleton(TestServicePlugin.class, TestServicePluginA.class);
+        builder.addSingleton(TestServicePlugin.class, TestServicePluginB.class);
+        builder.addTransient(TestServicePipeline.class);
+
+        RootServiceProvider rsp = builder.build();
+        assertTrue(rsp.getService(TestServicePlugin.class) instanceof TestServicePluginB);
+
+        TestServicePipeline pipeline = rsp.getService(TestServicePipeline.class);
+        assertEquals(List.of(TestServicePluginA.class, TestServicePluginB.class), pipeline.list.stream().map(Object::getClass).toList());
+        assertEquals(List.copyOf(pipeline.set), pipeline.list);
+        assertEquals(pipeline.list, List.of(pipeline.array));
+        assertSame(pipeline.list.get(1), rsp.getService(TestServicePlugin.class));
+        // Singleton multi-bindings are resolved once and shared
+        assertSame(pipeline.list, rsp.getService(TestServicePipeline.class).list);
+        assertSame(pipeline.list, rsp.getServices(TestServicePlugin.class));
+        assertEquals(List.of(), rsp.getServices(TestServiceLevel2.class));
+
+        List<Service<?>> loadOrder = rsp.getRegistry().getLoadOrder();
+        int pipelineIndex = loadOrder.indexOf(rsp.getRegistry().getRegistration(TestServicePipeline.class));
+        for (Service<?> plugin : rsp.getRegistry().getMultiBinding(TestServicePlugin.class).getRegistrations()) {
+            assertTrue(loadOrder.indexOf(plugin) < pipelineIndex);
+        }
+
+        RootServiceProvider transientPlugins = new ServiceCollectionBuilder()
+                .addTransient(TestServicePlugin.class, TestServicePluginA.class)
+                .addTransient(TestServicePipeline.class)
+                .build();
+        assertNotSame(transientPlugins.getServices(TestServicePlugin.class).get(0), transientPlugins.getServices(TestServicePlugin.class).get(0));
+    }
+
+    @Test
+    public void keyedServicesAreResolvedByKey() {
+        TestServiceLevel1 primary = new TestServiceLevel1();
+        TestServiceLevel1 secondary = new TestServiceLevel1();
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addKeyedSingleton(TestServiceLevel1.class, "primary", primary);
+        builder.addKeyedSingleton(TestServiceLevel1.class, "secondary", secondary);
+        for (int shard = 0; shard < 64; shard++) {
+            builder.addKeyedSingleton(TestServiceLevel2.class, shard, TestServiceLevel2.class);
+        }
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addTransient(TestServiceKeyed.class);
+
+        RootServiceProvider rsp = builder.build();
+        TestServiceKeyed keyed = rsp.getService(TestServiceKeyed.class);
+        assertSame(primary, keyed.primary);
+        assertSame(secondary, keyed.secondary.get());
+        assertSame(secondary, rsp.getKeyedService(TestServiceLevel1.class, "secondary"));
+        assertNull(rsp.getKeyedService(TestServiceLevel1.class, "missing"));
+        assertNotSame(primary, rsp.getService(TestServiceLevel1.class));
+        assertEquals(1, rsp.getServices(TestServiceLevel1.class).size());
+
+        assertNotNull(rsp.getKeyedService(TestServiceLevel2.class, 42));
+        assertNotSame(rsp.getKeyedService(TestServiceLevel2.class, 41), rsp.getKeyedService(TestServiceLevel2.class, 42));
+        assertNull(rsp.getKeyedService(TestServiceLevel2.class, 64));
+        assertNull(rsp.getService(TestServiceLevel2.class));
+
+        RootServiceProvider missing = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addTransient(TestServiceKeyed.class)
+                .build();
+        try {
+            missing.getService(TestServiceKeyed.class);
+            fail("The keyed dependency should be missing");
+        } catch (MissingServiceException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("with the key primary"));
+        }
+    
+        // Injected keys are strings, they also match keys with the same string value
+        RootServiceProvider enumKeyed = new ServiceCollectionBuilder()
+                .addKeyedSingleton(TestServiceLevel1.class, Slot.primary, primary)
+                .addKeyedSingleton(TestServiceLevel1.class, Slot.secondary, secondary)
+                .addTransient(TestServiceKeyed.class)
+                .build();
+        keyed = enumKeyed.getService(TestServiceKeyed.class);
+        assertSame(primary, keyed.primary);
+        assertSame(secondary, keyed.secondary.get());
+        assertNull(enumKeyed.getKeyedService(TestServiceLevel1.class, "primary"));
+    }
+
+    private enum Slot { primary, secondary }
+
+    @Test
+    public void genericServicesAreResolvedByType() throws Exception {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addOpenGenericSingleton(TestServiceRepository.class, TestServiceJdbcRepository.class)
+                .addSingleton(new TypeReference<TestServiceRepository<String>>() {}, TestServiceStringRepository.class)
+                .addTransient(TestServiceRepositoryConsumer.class)
+                .build();
+
+        TestServiceRepositoryConsumer consumer = rsp.getService(TestServiceRepositoryConsumer.class);
+        assertTrue(consumer.strings instanceof TestServiceStringRepository);
+        assertTrue(consumer.integers instanceof TestServiceJdbcRepository);
+        assertSame(rsp.getService(TestServiceLevel1.class), ((TestServiceJdbcRepository<?>) consumer.integers).level1);
+        // Every closed type has its own registration, found by reflected types as well
+        TestServiceRepository<Long> longs = consumer.longs.get();
+        assertNotSame(consumer.integers, longs);
+        assertSame(longs, rsp.getService(new TypeReference<TestServiceRepository<Long>>() {}));
+        Object reflected = TestServiceRepositoryConsumer.class.getConstructors()[0].getGenericParameterTypes()[1];
+        assertSame(rsp.getRegistry().getRegistration(new TypeReference<TestServiceRepository<Integer>>() {}.getType()), rsp.getRegistry().getRegistration((java.lang.reflect.Type) reflected));
+        assertNull(rsp.getService(TestServiceRepository.class));
+
+        // Types that were not injected are closed on first use and planned once
+        int size = rsp.getRegistry().size();
+        TestServiceRepository<Double> doubles = rsp.getRequiredService(new TypeReference<TestServiceRepository<Double>>() {});
+        assertEquals(size + 1, rsp.getRegistry().size());
+        assertSame(doubles, rsp.getService(new TypeReference<TestServiceRepository<Double>>() {}));
+        assertEquals(size + 1, rsp.getRegistry().size());
+
+        // Scopes created before a type was closed store its instances as well
+        RootServiceProvider scoped = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addOpenGenericScoped(TestServiceRepository.class, TestServiceJdbcRepository.class)
+                .build();
+        try (ServiceScope scope = scoped.getScope(); ServiceScope concurrent = scoped.getConcurrentScope()) {
+            TypeReference<TestServiceRepository<Short>> shorts = new TypeReference<>() {};
+            assertSame(scope.getService(shorts), scope.getService(shorts));
+            assertSame(concurrent.getService(shorts), concurrent.getService(shorts));
+            assertNotSame(scope.getService(shorts), concurrent.getService(shorts));
+        }
+    }
+
+    @Test
+    public void childProvidersOnlyRecreateOverriddenServices() {
+        RootServiceProvider parent = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addSingleton(TestServiceLevel2.class)
+                .addSingleton(TestServiceLevel3.class)
+                .addSingleton(TestServiceLevel1A.class)
+                .addSingleton(TestServicePlugin.class, TestServicePluginA.class)
+                .addKeyedSingleton(TestServiceLevel1.class, "primary", new TestServiceLevel1())
+                .build();
+
+        TestServiceLevel1 tenantLevel1 = new TestServiceLevel1();
+        RootServiceProvider child = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class, tenantLevel1)
+                .addKeyedSingleton(TestServiceLevel1.class, "secondary", new TestServiceLevel1())
+                .buildChild(parent);
+
+        // Services that do not depend on an override are shared with their singletons
+        assertSame(parent.getService(TestServiceLevel1A.class), child.getService(TestServiceLevel1A.class));
+        assertSame(parent.getRegistry().getRegistration(TestServicePlugin.class), child.getRegistry().getRegistration(TestServicePlugin.class));
+        assertSame(parent.getKeyedService(TestServiceLevel1.class, "primary"), child.getKeyedService(TestServiceLevel1.class, "primary"));
+        assertSame(parent.getServices(TestServicePlugin.class), child.getServices(TestServicePlugin.class));
+
+        // Overridden services and their dependents are re-created
+        assertSame(tenantLevel1, child.getService(TestServiceLevel1.class));
+        assertNotSame(parent.getService(TestServiceLevel1.class), tenantLevel1);
+        assertNotSame(parent.getService(TestServiceLevel2.class), child.getService(TestServiceLevel2.class));
+        assertNotSame(parent.getService(TestServiceLevel3.class), child.getService(TestServiceLevel3.class));
+        assertEquals(List.of(tenantLevel1), child.getServices(TestServiceLevel1.class));
+        assertNotNull(child.getKeyedService(TestServiceLevel1.class, "secondary"));
+        assertNull(parent.getKeyedService(TestServiceLevel1.class, "secondary"));
+        assertSame(child, child.getService(RootServiceProvider.class));
+        assertSame(parent, parent.getService(RootServiceProvider.class));
+
+        // The child only adds its overrides, the copies keep the ids of the services they replace
+        assertEquals(parent.getRegistry().size() + 3, child.getRegistry().size());
+        assertEquals(parent.getRegistry().getRegistration(TestServiceLevel2.class).getId(), child.getRegistry().getRegistration(TestServiceLevel2.class).getId());
+    }
+
+    @Test
+    public void childProvidersDoNotShareFactorySingletonsWithoutDeclaredDependencies() {
+        RootServiceProvider parent = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addSingleton(List.class, (Function<ServiceProvider, Object>) provider -> List.of(provider.getService(TestServiceLevel1.class)))
+                .build();
+
+        TestServiceLevel1 tenantLevel1 = new TestServiceLevel1();
+        RootServiceProvider child = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class, tenantLevel1)
+                .buildChild(parent);
+
+        // The child resolves the factory singleton first, the parent must not see the instance of the tenant
+        assertEquals(List.of(tenantLevel1), child.getService(List.class));
+        assertEquals(List.of(parent.getService(TestServiceLevel1.class)), parent.getService(List.class));
+        assertNotSame(parent.getService(List.class), child.getService(List.class));
+    }
+
+    @Test
+    public void updatesOnlyInvalidateDependentSingletons() {
+        RootServiceProvider provider = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addSingleton(TestServiceLevel2.class)
+                .addSingleton(TestServiceLevel1A.class)
+                .build();
+        TestServiceLevel1A unaffected = provider.getService(TestServiceLevel1A.class);
+        TestServiceLevel2 previous = provider.getService(TestServiceLevel2.class);
+        ServiceScopePool pool = provider.createScopePool(1);
+        pool.acquire().release();
+        ServiceScope before = provider.getScope();
+
+        TestServiceLevel1 replacement = new TestServiceLevel1();
+        new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class, replacement)
+                .addTransient(TestServicePlugin.class, TestServicePluginA.class)
+                .update(provider);
+
+        assertSame(replacement, provider.getService(TestServiceLevel1.class));
+        assertSame(unaffected, provider.getService(TestServiceLevel1A.class));
+        assertNotSame(previous, provider.getService(TestServiceLevel2.class));
+        assertNotNull(provider.getService(TestServicePlugin.class));
+        assertSame(provider, provider.getService(RootServiceProvider.class));
+
+        // Scopes created before the update keep their registry, new and pooled scopes use the new one
+        assertSame(previous, before.getService(TestServiceLevel2.class));
+        assertNull(before.getService(TestServicePlugin.class));
+        ServiceScope pooled = pool.acquire();
+        assertSame(provider.getService(TestServiceLevel2.class), pooled.getService(TestServiceLevel2.class));
+        assertNotNull(pooled.getService(TestServicePlugin.class));
+    }
+
+    @Test
+    public void updatesReplaceTheRegistryAndCloseReplacedSingletons() {
+        List<Object> closed = new ArrayList<>();
+        RootServiceProvider provider = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addSingleton(TestServiceLevel1A.class)
+                .addSingleton(List.class, (Function<ServiceProvider, Object>) p -> List.of(p.getService(TestServiceLevel1.class)))
+                .addSingleton(TestServiceDisposable.class, (Function<ServiceProvider, Object>) p -> new TestServiceDisposable(closed))
+                .build();
+        int registrations = provider.getRegistry().size();
+        TestServiceLevel1A unaffected = provider.getService(TestServiceLevel1A.class);
+        TestServiceDisposable disposable = provider.getService(TestServiceDisposable.class);
+        provider.getService(List.class);
+
+        for (int i = 0; i < 3; i++) {
+            TestServiceLevel1 replacement = new TestServiceLevel1();
+            new ServiceCollectionBuilder()
+                    .addSingleton(TestServiceLevel1.class, replacement)
+                    .update(provider);
+
+            // Factory singletons that do not declare their dependencies are created again with the new registrations
+            assertEquals(List.of(replacement), provider.getService(List.class));
+            assertNull(provider.getRegistry().getParent());
+        }
+        assertSame(unaffected, provider.getService(TestServiceLevel1A.class));
+
+        // The replaced registrations are dropped and the replaced singletons are closed
+        ServiceRegistry registry = provider.getRegistry();
+        int kept = 0;
+        for (int id = 0; id < registry.size(); id++) {
+            if(registry.getRegistration(id) != null) kept++;
+        }
+        assertEquals(registrations, kept);
+        assertEquals(List.of(disposable), closed);
+        TestServiceDisposable current = provider.getService(TestServiceDisposable.class);
+        assertNotSame(disposable, current);
+
+        // Once a child was built the singletons may be shared with it, so they are no longer closed
+        new ServiceCollectionBuilder().buildChild(provider);
+        new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .update(provider);
+        assertEquals(List.of(disposable), closed);
+        assertNotSame(current, provider.getService(TestServiceDisposable.class));
+    }
+
+    @Test
+    public void pooledInstancesAreReusedAfterTheirScopeEnds() {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addPooled(StringBuilder.class, provider -> new StringBuilder(), 2, builder -> builder.setLength(0))
+                .build();
+
+        StringBuilder first;
+        try (ServiceScope scope = rsp.getScope()) {
+            first = scope.getService(StringBuilder.class).append("request");
+        }
+        try (ServiceScope scope = rsp.getScope()) {
+            StringBuilder reused = scope.getService(StringBuilder.class);
+            assertSame(first, reused);
+            assertEquals(0, reused.length());
+            assertNotSame(reused, scope.getService(StringBuilder.class));
+            scope.releaseService(StringBuilder.class, reused);
+            assertSame(reused, scope.getService(StringBuilder.class));
+        }
+
+        // Instances resolved outside a scope are only reused once they are released
+        StringBuilder root = rsp.getService(StringBuilder.class);
+        assertNotSame(root, rsp.getService(StringBuilder.class));
+        rsp.releaseService(StringBuilder.class, root.append("root"));
+        StringBuilder again = rsp.getService(StringBuilder.class);
+        assertTrue(again == root || again.length() == 0);
+        assertEquals(0, root.length());
+    }
+
+    @Test
+    public void releasingAPooledInstanceTwicePoolsItOnce() {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addPooled(StringBuilder.class, provider -> new StringBuilder(), 2, builder -> builder.setLength(0))
+                .build();
+
+        // A scope only releases the instances it took out of the pool, and only once
+        StringBuilder unowned = rsp.getService(StringBuilder.class);
+        try (ServiceScope scope = rsp.getScope()) {
+            StringBuilder owned = scope.getService(StringBuilder.class);
+            scope.releaseService(StringBuilder.class, owned);
+            scope.releaseService(StringBuilder.class, owned);
+            scope.releaseService(StringBuilder.class, unowned);
+            assertSame(owned, scope.getService(StringBuilder.class));
+            assertNotSame(owned, scope.getService(StringBuilder.class));
+        }
+
+        // Instances resolved outside a scope are not pooled again while they are still pooled
+        assertNotSame(rsp.getService(StringBuilder.class), rsp.getService(StringBuilder.class));
+        rsp.releaseService(StringBuilder.class, unowned);
+        rsp.releaseService(StringBuilder.class, unowned);
+        StringBuilder first = rsp.getService(StringBuilder.class);
+        assertNotSame(first, rsp.getService(StringBuilder.class));
+    }
+
+    @Test
+    public void optionalDependenciesAndTryGetServiceDoNotThrow() {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addTransient(TestServiceOptionalConsumer.class)
+                .addTransient(TestServiceLevel3.class)
+                .build();
+
+        TestServiceOptionalConsumer consumer = rsp.getService(TestServiceOptionalConsumer.class);
+        assertSame(rsp.getService(TestServiceLevel1.class), consumer.level1.orElseThrow());
+        assertFalse(consumer.plugin.isPresent());
+
+        assertTrue(rsp.tryGetService(TestServiceLevel1.class).isPresent());
+        ServiceResult<TestServicePlugin> missing = rsp.tryGetService(TestServicePlugin.class);
+        assertFalse(missing.isPresent());
+        assertFalse(missing.isFailed());
+
+        // Only the exceptions of tryGetService are created without a stack trace
+        ServiceResult<TestServiceLevel3> failed = rsp.tryGetService(TestServiceLevel3.class);
+        assertTrue(failed.isFailed());
+        assertEquals(0, failed.getError().getStackTrace().length);
+        assertEquals(List.of(TestServiceLevel3.class, TestServiceLevel2.class), ((MissingServiceException) failed.getError()).getPath());
+        MissingServiceException thrown = assertThrows(MissingServiceException.class, () -> rsp.getService(TestServiceLevel3.class));
+        assertTrue(thrown.getStackTrace().length > 0);
+
+        ResolutionException.setStackTracesEnabled(false);
+        try {
+            assertEquals(0, assertThrows(MissingServiceException.class, () -> rsp.getService(TestServiceLevel3.class)).getStackTrace().length);
+        } finally {
+            ResolutionException.setStackTracesEnabled(true);
+        }
+    }
+
+    @Test
+    public void graphSnapshotIsReused() throws Exception {
+        Path file = Files.createTempDirectory("di4j").resolve("graph.bin");
+        java.util.function.Supplier<ServiceCollectionBuilder> builder = () -> new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addTransient(TestServiceLevel2.class)
+                .addScoped(TestServiceLevel3.class)
+                .addTransient(TestServiceGenerated.class)
+                .useGraphSnapshot(file);
+
+        List<List<Service<?>>> expected = builder.get().build().getRegistry().getLoadLevels();
+        assertTrue(Files.size(file) > 0);
+        byte[] written = Files.readAllBytes(file);
+
+        RootServiceProvider rsp = builder.get().build();
+        assertEquals(types(expected), types(rsp.getRegistry().getLoadLevels()));
+        assertNotNull(rsp.getScope().getService(TestServiceLevel3.class));
+        assertSame(rsp.getService(TestServiceLevel1.class), rsp.getService(TestServiceGenerated.class).getTestServiceLevel1());
+
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertNotNull(builder.get().build().getService(TestServiceLevel2.class));
+        assertArrayEquals(written, Files.readAllBytes(file));
+
+        // A snapshot that records a constructor the class does not have falls back to inspecting the class
+        byte[] stale = written.clone();
+        byte[] parameter = TestServiceLevel1.class.getName().getBytes(StandardCharsets.UTF_8);
+        int at = indexOf(stale, parameter, indexOf(stale, TestServiceLevel2.class.getName().getBytes(StandardCharsets.UTF_8), 0));
+        System.arraycopy(TestServiceLevel3.class.getName().getBytes(StandardCharsets.UTF_8), 0, stale, at, parameter.length);
+        Files.write(file, stale);
+        assertNotNull(builder.get().build().getService(TestServiceLevel2.class));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] value, int from) {
+        for (int i = from; i <= bytes.length - value.length; i++) {
+            if(Arrays.equals(bytes, i, i + value.length, value, 0, value.length)) return i;
+        }
+        throw new AssertionError("The value was not found");
+    }
+
+    private static List<Set<Class<?>>> types(List<List<Service<?>>> levels) {
+        return levels.stream().map(level -> level.stream().<Class<?>>map(Service::getType).collect(Collectors.toSet())).toList();
+    }
+
+    @Test
+    public void usesGeneratedFactory() {
+        ServiceCollectionBuilder builder = new ServiceCollectionBuilder();
+        builder.addSingleton(TestServiceLevel1.class);
+        builder.addTransient(TestServiceGenerated.class);
+
+        RootServiceProvider rsp = builder.build();
+        TestServiceGenerated service = rsp.getService(TestServiceGenerated.class);
+        assertSame(rsp.getService(TestServiceLevel1.class), service.getTestServiceLevel1());
+        assertEquals(List.of(TestServiceLevel1.class), rsp.getRegistry().getRegistration(TestServiceGenerated.class).getRequiredServices());
+    }
+}
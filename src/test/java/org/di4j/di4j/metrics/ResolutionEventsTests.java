@@ -0,0 +1,61 @@
+package org.di4j.di4j.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.scope.ServiceScope;
+import org.di4j.di4j.services.TestServiceLevel1;
+import org.di4j.di4j.services.TestServiceLevel2;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResolutionEventsTests {
+
+    @Test
+    public void emitsFlightRecorderEvents() throws Exception {
+        ResolutionMetrics metrics = new ResolutionMetrics();
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addScoped(TestServiceLevel2.class)
+                .setResolutionListener(metrics)
+                .addResolutionListener(new ResolutionEvents())
+                .build();
+
+        Path file = Files.createTempFile("di4j", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ResolutionEvents.ServiceResolutionEvent.class);
+            recording.enable(ResolutionEvents.ScopeCreatedEvent.class);
+            recording.start();
+            ServiceScope scope = rsp.getScope();
+            scope.getService(TestServiceLevel2.class);
+            scope.getService(TestServiceLevel2.class);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        List<RecordedEvent> resolutions = events.stream().filter(x -> x.getEventType().getName().equals("org.di4j.di4j.ServiceResolution")).toList();
+        List<RecordedEvent> scopes = events.stream().filter(x -> x.getEventType().getName().equals("org.di4j.di4j.ScopeCreated")).toList();
+        assertEquals(1, scopes.size());
+        assertNull(scopes.get(0).getStackTrace());
+        assertEquals(3, resolutions.size());
+
+        RecordedEvent singleton = resolutions.stream().filter(x -> x.getClass("serviceType").getName().equals(TestServiceLevel1.class.getName())).findFirst().orElseThrow();
+        assertEquals("SINGLETON", singleton.getString("lifetime"));
+        assertFalse(singleton.getBoolean("cached"));
+        assertEquals(1, singleton.getInt("depth"));
+        assertTrue(resolutions.stream().anyMatch(x -> x.getBoolean("cached") && x.getString("lifetime").equals("SCOPED") && x.getInt("depth") == 0));
+
+        // The listener that was set before keeps receiving the resolutions
+        assertEquals(1, metrics.getMetrics(TestServiceLevel2.class).getCacheHitCount());
+        assertEquals(1, metrics.getMetrics(TestServiceLevel1.class).getConstructionCount());
+    }
+}
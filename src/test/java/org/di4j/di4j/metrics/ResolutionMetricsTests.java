@@ -0,0 +1,66 @@
+package org.di4j.di4j.metrics;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.scope.ServiceScope;
+import org.di4j.di4j.services.TestServiceLevel1;
+import org.di4j.di4j.services.TestServiceLevel2;
+import org.di4j.di4j.services.TestServiceLevel3;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+public class ResolutionMetricsTests {
+
+    @Test
+    public void countsResolutionsPerService() {
+        ResolutionMetrics metrics = new ResolutionMetrics();
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addScoped(TestServiceLevel2.class)
+                .addTransient(TestServiceLevel3.class)
+                .setResolutionListener(metrics)
+                .build();
+
+        ServiceScope scope = rsp.getScope();
+        scope.getService(TestServiceLevel3.class);
+        scope.getService(TestServiceLevel3.class);
+
+        ServiceMetrics singleton = metrics.getMetrics(TestServiceLevel1.class);
+        assertEquals(1, singleton.getConstructionCount());
+        assertEquals(0, singleton.getCacheHitCount());
+
+        ServiceMetrics scoped = metrics.getMetrics(TestServiceLevel2.class);
+        assertEquals(1, scoped.getConstructionCount());
+        assertEquals(1, scoped.getCacheHitCount());
+        assertEquals(2, scoped.getResolutionCount());
+
+        ServiceMetrics transientMetrics = metrics.getMetrics(TestServiceLevel3.class);
+        assertEquals(2, transientMetrics.getConstructionCount());
+        assertTrue(transientMetrics.getConstructionNanosP99() <= transientMetrics.getMaxConstructionNanos());
+    }
+
+    @Test
+    public void exportsMetricsToJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ResolutionMetrics metrics = new ResolutionMetrics();
+        metrics.exportToJmx(server, "test");
+
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .setResolutionListener(metrics)
+                .build();
+        rsp.getService(TestServiceLevel1.class);
+        rsp.getService(TestServiceLevel1.class);
+
+        ObjectName name = new ObjectName("test:type=ServiceMetrics,name=" + ObjectName.quote(TestServiceLevel1.class.getName()));
+        assertEquals(2L, server.getAttribute(name, "ResolutionCount"));
+
+        metrics.unexportFromJmx();
+        assertFalse(server.isRegistered(name));
+    }
+}
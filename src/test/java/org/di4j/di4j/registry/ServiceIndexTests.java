@@ -0,0 +1,68 @@
+package org.di4j.di4j.registry;
+
+import org.di4j.di4j.exceptions.ClassNotAssignableException;
+import org.di4j.di4j.exceptions.InvalidServiceRegistrationException;
+import org.di4j.di4j.services.TestServiceLevel1;
+import org.di4j.di4j.services.TestServiceLevel2;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServiceIndexTests {
+
+    private static URLClassLoader loader(String... lines) throws IOException {
+        Path directory = Files.createTempDirectory("di4j-index");
+        Path index = directory.resolve(ServiceIndex.LOCATION);
+        Files.createDirectories(index.getParent());
+        Files.write(index, List.of(lines));
+        return new URLClassLoader(new URL[] { directory.toUri().toURL() }, ServiceIndexTests.class.getClassLoader());
+    }
+
+    @Test
+    public void readsEntries() throws IOException {
+        try (var loader = loader("# comment", "", "SINGLETON " + TestServiceLevel1.class.getName() + " " + Object.class.getName(), "  TRANSIENT " + TestServiceLevel2.class.getName())) {
+            assertEquals(List.of(new ServiceIndex.Entry(ServiceLifetime.SINGLETON, Object.class, TestServiceLevel1.class),
+                    new ServiceIndex.Entry(ServiceLifetime.TRANSIENT, TestServiceLevel2.class, TestServiceLevel2.class)), ServiceIndex.read(loader));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedEntries() throws IOException {
+        try (var loader = loader("SINGLETON")) {
+            var exception = assertThrows(InvalidServiceRegistrationException.class, () -> ServiceIndex.read(loader));
+            assertTrue(exception.getMessage().contains("malformed entry"));
+        }
+        try (var loader = loader("SINGLETON " + TestServiceLevel1.class.getName() + " " + Object.class.getName() + " extra")) {
+            assertThrows(InvalidServiceRegistrationException.class, () -> ServiceIndex.read(loader));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownLifetimes() throws IOException {
+        try (var loader = loader("FOREVER " + TestServiceLevel1.class.getName())) {
+            var exception = assertThrows(InvalidServiceRegistrationException.class, () -> ServiceIndex.read(loader));
+            assertTrue(exception.getMessage().contains("unknown lifetime"));
+        }
+        try (var loader = loader("POOLED " + TestServiceLevel1.class.getName())) {
+            assertThrows(InvalidServiceRegistrationException.class, () -> ServiceIndex.read(loader));
+        }
+    }
+
+    @Test
+    public void rejectsClassesThatCannotBeLoaded() throws IOException {
+        try (var loader = loader("SINGLETON org.di4j.di4j.services.Removed")) {
+            var exception = assertThrows(InvalidServiceRegistrationException.class, () -> ServiceIndex.read(loader));
+            assertTrue(exception.getMessage().contains("org.di4j.di4j.services.Removed"));
+        }
+        try (var loader = loader("SINGLETON " + TestServiceLevel1.class.getName() + " " + TestServiceLevel2.class.getName())) {
+            assertThrows(ClassNotAssignableException.class, () -> ServiceIndex.read(loader));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.di4j.di4j.scope;
+
+import org.di4j.di4j.RootServiceProvider;
+import org.di4j.di4j.ServiceCollectionBuilder;
+import org.di4j.di4j.TypeReference;
+import org.di4j.di4j.exceptions.CannotUseScopedServiceInRootScopeException;
+import org.di4j.di4j.exceptions.CircularDependencyException;
+import org.di4j.di4j.exceptions.ScopeDisposalException;
+import org.di4j.di4j.services.TestServiceCounting;
+import org.di4j.di4j.services.TestServiceCycleA;
+import org.di4j.di4j.services.TestServiceCycleB;
+import org.di4j.di4j.services.TestServiceDeferred;
+import org.di4j.di4j.services.TestServiceDisposable;
+import org.di4j.di4j.services.TestServiceLevel1;
+import org.di4j.di4j.services.TestServiceJdbcRepository;
+import org.di4j.di4j.services.TestServiceLevel2;
+import org.di4j.di4j.services.TestServiceRepository;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ServiceScopeTests {
+
+    private static RootServiceProvider build() {
+        return new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addScoped(TestServiceLevel2.class)
+                .build();
+    }
+
+    @Test
+    public void resetDropsScopedInstances() {
+        ServiceScope scope = build().getScope();
+        TestServiceLevel2 first = scope.getService(TestServiceLevel2.class);
+        assertSame(first, scope.getService(TestServiceLevel2.class));
+
+        scope.reset();
+        assertNotSame(first, scope.getService(TestServiceLevel2.class));
+    }
+
+    @Test
+    public void scopedServicesThatCloseAGenericAreCreatedOnce() {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addOpenGenericScoped(TestServiceRepository.class, TestServiceJdbcRepository.class)
+                .addScoped(List.class, provider -> List.of(provider.getService(new TypeReference<TestServiceRepository<String>>() {})))
+                .build();
+
+        // Creating the list closes the repository for strings, which adds a registration while the scope stores the list
+        try (ServiceScope scope = rsp.getScope()) {
+            assertSame(scope.getService(List.class), scope.getService(List.class));
+        }
+    }
+
+    @Test
+    public void deferredDependenciesResolveInTheirScope() {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addTransient(TestServiceLevel1.class)
+                .addScoped(TestServiceLevel2.class)
+                .addScoped(TestServiceDeferred.class)
+                .build();
+        assertEquals(2, rsp.getRegistry().getLoadLevels().size());
+
+        ServiceScope scope = rsp.getScope();
+        TestServiceDeferred deferred = scope.getService(TestServiceDeferred.class);
+        TestServiceLevel2 level2 = deferred.level2.get();
+        assertSame(level2, deferred.level2.get());
+        assertSame(scope.getService(TestServiceLevel2.class), level2);
+        assertNotSame(rsp.getScope().getService(TestServiceLevel2.class), level2);
+        assertNotSame(deferred.level1.get(), deferred.level1.get());
+    }
+
+    @Test
+    public void rootLookupsUseAmbientScope() throws Exception {
+        RootServiceProvider rsp = build();
+        ServiceScope scope = rsp.getScope();
+        AmbientScope.run(scope, () -> assertSame(scope.getService(TestServiceLevel2.class), rsp.getService(TestServiceLevel2.class)));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<TestServiceLevel2> forked = AmbientScope.call(scope, () -> executor.submit(AmbientScope.wrap(() -> rsp.getService(TestServiceLevel2.class))));
+            assertSame(scope.getService(TestServiceLevel2.class), forked.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertNull(AmbientScope.current());
+        assertThrows(CannotUseScopedServiceInRootScopeException.class, () -> rsp.getService(TestServiceLevel2.class));
+        AmbientScope.run(build().getScope(), () -> assertThrows(CannotUseScopedServiceInRootScopeException.class, () -> rsp.getService(TestServiceLevel2.class)));
+    }
+
+    @Test
+    public void concurrentScopeCreatesScopedServicesOnce() throws Exception {
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addSingleton(TestServiceLevel1.class)
+                .addScoped(TestServiceCounting.class)
+                .build();
+
+        TestServiceCounting.INSTANCES.set(0);
+        ConcurrentServiceScope scope = rsp.getConcurrentScope();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TestServiceCounting>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> scope.getService(TestServiceCounting.class)));
+            }
+            for (Future<TestServiceCounting> future : futures) {
+                assertSame(scope.getService(TestServiceCounting.class), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, TestServiceCounting.INSTANCES.get());
+
+        scope.reset();
+        assertNotNull(scope.getService(TestServiceCounting.class));
+        assertEquals(2, TestServiceCounting.INSTANCES.get());
+    }
+
+    @Test
+    public void concurrentScopeReportsCyclesAcrossThreads() throws Exception {
+        // Both threads start creating their service before either needs the other one
+        CountDownLatch started = new CountDownLatch(2);
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addScoped(TestServiceCycleA.class, provider -> new TestServiceCycleA(awaitThen(started, () -> provider.getService(TestServiceCycleB.class))))
+                .addScoped(TestServiceCycleB.class, provider -> new TestServiceCycleB(awaitThen(started, () -> provider.getService(TestServiceCycleA.class))))
+                .build();
+
+        ConcurrentServiceScope scope = rsp.getConcurrentScope();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<TestServiceCycleA> a = executor.submit(() -> scope.getService(TestServiceCycleA.class));
+            Future<TestServiceCycleB> b = executor.submit(() -> scope.getService(TestServiceCycleB.class));
+            for (Future<?> future : List.of(a, b)) {
+                ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                CircularDependencyException cycle = (CircularDependencyException) failure.getCause();
+                assertTrue(cycle.getPath().containsAll(List.of(TestServiceCycleA.class, TestServiceCycleB.class)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T awaitThen(CountDownLatch latch, java.util.function.Supplier<T> next) {
+        latch.countDown();
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return next.get();
+    }
+
+    @Test
+    public void pooledScopesAreReusedWithoutInstances() {
+        ServiceScopePool pool = build().createScopePool(4);
+        ServiceScope scope = pool.acquire();
+        TestServiceLevel2 first = scope.getService(TestServiceLevel2.class);
+        scope.release();
+
+        ServiceScope reused = pool.acquire();
+        assertSame(scope, reused);
+        assertNotSame(first, reused.getService(TestServiceLevel2.class));
+        assertNotSame(reused, pool.acquire());
+    }
+
+    @Test
+    public void releasingAPooledScopeTwiceHandsItBackOnce() {
+        ServiceScopePool pool = build().createScopePool(4);
+        ServiceScope scope = pool.acquire();
+        scope.release();
+        scope.release();
+        scope.close();
+
+        assertSame(scope, pool.acquire());
+        assertNotSame(scope, pool.acquire());
+    }
+
+    @Test
+    public void closeDisposesInReverseCreationOrder() {
+        List<Object> closed = new ArrayList<>();
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addScoped(TestServiceDisposable.class, provider -> new TestServiceDisposable(closed))
+                .addTransient(AutoCloseable.class, provider -> (AutoCloseable) () -> { throw new IllegalStateException("first"); })
+                .addTransient(Runnable.class, provider -> new Failing())
+                .disposeTransientsWithScope()
+                .build();
+
+        ServiceScope scope = rsp.getScope();
+        TestServiceDisposable disposable = scope.getService(TestServiceDisposable.class);
+        scope.getService(AutoCloseable.class);
+        scope.getService(Runnable.class);
+
+        ScopeDisposalException exception = assertThrows(ScopeDisposalException.class, scope::close);
+        assertEquals("second", exception.getCause().getMessage());
+        assertEquals("first", exception.getSuppressed()[0].getMessage());
+        assertEquals(List.of(disposable), closed);
+    }
+
+    @Test
+    public void transientsAreNotDisposedByDefault() {
+        List<Object> closed = new ArrayList<>();
+        RootServiceProvider rsp = new ServiceCollectionBuilder()
+                .addTransient(TestServiceDisposable.class, provider -> new TestServiceDisposable(closed))
+                .build();
+
+        try (ServiceScope scope = rsp.getScope()) {
+            scope.getService(TestServiceDisposable.class);
+        }
+        assertTrue(closed.isEmpty());
+    }
+
+    private static class Failing implements Runnable, AutoCloseable {
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void close() {
+            throw new IllegalStateException("second");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.di4j.di4j.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestServiceCounting {
+
+    public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    public TestServiceCounting(TestServiceLevel1 testServiceLevel1) throws InterruptedException {
+        INSTANCES.incrementAndGet();
+        Thread.sleep(20);
+    }
+
+}
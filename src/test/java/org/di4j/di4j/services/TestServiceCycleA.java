@@ -0,0 +1,9 @@
+package org.di4j.di4j.services;
+
+public class TestServiceCycleA {
+
+    public TestServiceCycleA(TestServiceCycleB testServiceCycleB) {
+
+    }
+
+}
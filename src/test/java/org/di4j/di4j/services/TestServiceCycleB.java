@@ -0,0 +1,9 @@
+package org.di4j.di4j.services;
+
+public class TestServiceCycleB {
+
+    public TestServiceCycleB(TestServiceCycleA testServiceCycleA) {
+
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.di4j.di4j.services;
+
+import org.di4j.di4j.Lazy;
+import org.di4j.di4j.Provider;
+
+public class TestServiceDeferred {
+
+    public final Lazy<TestServiceLevel2> level2;
+    public final Provider<TestServiceLevel1> level1;
+
+    public TestServiceDeferred(Lazy<TestServiceLevel2> level2, Provider<TestServiceLevel1> level1) {
+        this.level2 = level2;
+        this.level1 = level1;
+    }
+
+}
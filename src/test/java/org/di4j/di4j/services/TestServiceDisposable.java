@@ -0,0 +1,18 @@
+package org.di4j.di4j.services;
+
+import java.util.List;
+
+public class TestServiceDisposable implements AutoCloseable {
+
+    private final List<Object> closed;
+
+    public TestServiceDisposable(List<Object> closed) {
+        this.closed = closed;
+    }
+
+    @Override
+    public void close() {
+        closed.add(this);
+    }
+
+}
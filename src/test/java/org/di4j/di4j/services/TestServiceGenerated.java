@@ -0,0 +1,18 @@
+package org.di4j.di4j.services;
+
+import org.di4j.di4j.annotations.Injectable;
+
+@Injectable
+public class TestServiceGenerated {
+
+    private final TestServiceLevel1 testServiceLevel1;
+
+    public TestServiceGenerated(TestServiceLevel1 testServiceLevel1) {
+        this.testServiceLevel1 = testServiceLevel1;
+    }
+
+    public TestServiceLevel1 getTestServiceLevel1() {
+        return testServiceLevel1;
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.di4j.di4j.services;
+
+import org.di4j.di4j.registry.ServiceFactory;
+
+// Written in the shape the di4j annotation processor generates
+public final class TestServiceGenerated_DI4JFactory implements ServiceFactory<TestServiceGenerated> {
+
+    @Override
+    public Class<?>[] getParameterTypes() {
+        return new Class<?>[] { TestServiceLevel1.class };
+    }
+
+    @Override
+    public TestServiceGenerated create(Object[] parameters) {
+        return new TestServiceGenerated((TestServiceLevel1) parameters[0]);
+    }
+
+}
@@ -0,0 +1,11 @@
+package org.di4j.di4j.services;
+
+public class TestServiceJdbcRepository<T> implements TestServiceRepository<T> {
+
+    public final TestServiceLevel1 level1;
+
+    public TestServiceJdbcRepository(TestServiceLevel1 level1) {
+        this.level1 = level1;
+    }
+
+}
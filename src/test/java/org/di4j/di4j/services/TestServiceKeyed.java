@@ -0,0 +1,16 @@
+package org.di4j.di4j.services;
+
+import org.di4j.di4j.Provider;
+import org.di4j.di4j.annotations.ServiceKey;
+
+public class TestServiceKeyed {
+
+    public final TestServiceLevel1 primary;
+    public final Provider<TestServiceLevel1> secondary;
+
+    public TestServiceKeyed(@ServiceKey("primary") TestServiceLevel1 primary, @ServiceKey("secondary") Provider<TestServiceLevel1> secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+}
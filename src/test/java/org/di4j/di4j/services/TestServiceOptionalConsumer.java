@@ -0,0 +1,15 @@
+package org.di4j.di4j.services;
+
+import java.util.Optional;
+
+public class TestServiceOptionalConsumer {
+
+    public final Optional<TestServiceLevel1> level1;
+    public final Optional<TestServicePlugin> plugin;
+
+    public TestServiceOptionalConsumer(Optional<TestServiceLevel1> level1, Optional<TestServicePlugin> plugin) {
+        this.level1 = level1;
+        this.plugin = plugin;
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.di4j.di4j.services;
+
+import java.util.List;
+import java.util.Set;
+
+public class TestServicePipeline {
+
+    public final List<TestServicePlugin> list;
+    public final Set<TestServicePlugin> set;
+    public final TestServicePlugin[] array;
+
+    public TestServicePipeline(List<TestServicePlugin> list, Set<TestServicePlugin> set, TestServicePlugin[] array) {
+        this.list = list;
+        this.set = set;
+        this.array = array;
+    }
+
+}
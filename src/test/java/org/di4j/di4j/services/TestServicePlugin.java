@@ -0,0 +1,4 @@
+package org.di4j.di4j.services;
+
+public interface TestServicePlugin {
+}
@@ -0,0 +1,9 @@
+package org.di4j.di4j.services;
+
+public class TestServicePluginB implements TestServicePlugin {
+
+    public TestServicePluginB(TestServiceLevel1 level1) {
+
+    }
+
+}
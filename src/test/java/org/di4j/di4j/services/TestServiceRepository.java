@@ -0,0 +1,5 @@
+package org.di4j.di4j.services;
+
+public interface TestServiceRepository<T> {
+
+}
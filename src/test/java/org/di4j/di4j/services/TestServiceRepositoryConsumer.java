@@ -0,0 +1,17 @@
+package org.di4j.di4j.services;
+
+import org.di4j.di4j.Provider;
+
+public class TestServiceRepositoryConsumer {
+
+    public final TestServiceRepository<String> strings;
+    public final TestServiceRepository<Integer> integers;
+    public final Provider<TestServiceRepository<Long>> longs;
+
+    public TestServiceRepositoryConsumer(TestServiceRepository<String> strings, TestServiceRepository<Integer> integers, Provider<TestServiceRepository<Long>> longs) {
+        this.strings = strings;
+        this.integers = integers;
+        this.longs = longs;
+    }
+
+}
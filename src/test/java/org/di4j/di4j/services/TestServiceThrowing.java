@@ -0,0 +1,9 @@
+package org.di4j.di4j.services;
+
+public class TestServiceThrowing {
+
+    public TestServiceThrowing(TestServiceLevel1 testServiceLevel1) {
+        throw new IllegalStateException("Thrown from the constructor");
+    }
+
+}